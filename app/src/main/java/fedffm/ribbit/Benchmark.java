@@ -0,0 +1,367 @@
+package fedffm.ribbit;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Measurements that MainActivity runs on a capture when BENCHMARK is set. The
+ * settings being compared are passed to each call rather than set globally,
+ * so recognition running at the same time identifies the way it always does
+ */
+public class Benchmark {
+    private static final String LOG_TAG = "Benchmark";
+
+    /**
+     * Run every binarization mode over a set of captures whose words are known,
+     * and compare how long preprocessing takes against how often segmentation
+     * comes back with the right number of characters
+     * @param captures The images as they were loaded (they are not modified)
+     * @param words The word that was photographed in each capture
+     * @return A report with one line per binarization mode
+     */
+    public static String binarizationModes(List<Bitmap> captures, List<String> words) {
+        int[]    modes = {Preprocessor.GLOBAL, Preprocessor.OTSU, Preprocessor.SAUVOLA};
+        String[] names = {"global ", "otsu   ", "sauvola"};
+        String   report = "";
+
+        for (int m = 0; m < modes.length; ++m) {
+            long nanoseconds = 0;
+            int  successes   = 0;
+
+            for (int i = 0; i < captures.size(); ++i) {
+                try {
+                    long timeStart = System.nanoTime();
+                    BinaryImage prepared = Preprocessor.prepare(captures.get(i), modes[m]);
+                    nanoseconds += System.nanoTime() - timeStart;
+
+                    // A capture counts as a success when segmentation finds
+                    // exactly as many characters as the word has
+                    if (Preprocessor.segmentCharacters(prepared).size() == words.get(i).length())
+                        successes++;
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, names[m].trim() + " failed on \"" + words.get(i) + "\"", e);
+                }
+            }
+
+            report += names[m] + ": " + String.format("%.1f", nanoseconds / 1000000.0f) + "ms, " +
+                      successes + "/" + captures.size() + " segmented correctly\n";
+        }
+
+        Log.i(LOG_TAG, report);
+        return report;
+    }
+
+    /**
+     * Time preprocessing of the same captures with 1, 2, 4 and 8 threads, to
+     * see how well the banded passes scale on this device. The parallelism
+     * setting is left as it is
+     * @param captures The images as they were loaded (they are not modified)
+     * @param mode The binarization mode to time
+     * @return A report with one line per thread count
+     */
+    public static String parallelism(List<Bitmap> captures, int mode) {
+        int[]  threads  = {1, 2, 4, 8};
+        String report   = "";
+        long   baseline = 0;
+
+        for (int t : threads) {
+            // One untimed run, so that thread start-up isn't counted
+            for (Bitmap capture : captures)
+                Preprocessor.prepare(capture, mode, t);
+
+            long timeStart = System.nanoTime();
+            for (Bitmap capture : captures)
+                Preprocessor.prepare(capture, mode, t);
+            long nanoseconds = System.nanoTime() - timeStart;
+
+            if (t == 1)
+                baseline = nanoseconds;
+
+            report += t + " thread(s): " + String.format("%.1f", nanoseconds / 1000000.0f) + "ms, " +
+                      String.format("%.2f", (float)baseline / nanoseconds) + "x\n";
+        }
+
+        Log.i(LOG_TAG, report);
+        return report;
+    }
+
+    /**
+     * Segment the same captures and report what classifying their glyphs
+     * costs: the sweep that gathers every row and column signal, and the
+     * feature tests that run (in priority order) until one of them fires
+     * @param captures The images as they were loaded (they are not modified)
+     * @param mode The binarization mode to prepare the captures with
+     * @return A one line report
+     */
+    public static String classification(List<Bitmap> captures, int mode) {
+        Classifier.resetTiming();
+        for (Bitmap capture : captures)
+            Preprocessor.segmentCharacters(Preprocessor.prepare(capture, mode));
+
+        int    glyphs = Math.max(1, Classifier.getGlyphsTimed());
+        String report = Classifier.getGlyphsTimed() + " glyph(s): " +
+                        String.format("%.1f", Classifier.getSweepNanoseconds() / 1000.0f / glyphs) + "us sweep + " +
+                        String.format("%.1f", Classifier.getFeatureNanoseconds() / 1000.0f / glyphs) + "us features per glyph, " +
+                        "slowest " + String.format("%.1f", Classifier.getSlowestNanoseconds() / 1000.0f) + "us\n";
+
+        Log.i(LOG_TAG, report);
+        return report;
+    }
+
+    /**
+     * Identify every bundled sample against all of the others (leave one out),
+     * first exhaustively and then coarse-to-fine with a few pyramids and prune
+     * ratios, and compare how long each takes against how many samples it gets
+     * right. The identification mode and pyramid settings are left as they are
+     * @param context The context that the character base was loaded with
+     * @return A report with one line per configuration
+     */
+    public static String pyramid(Context context) {
+        CharacterBase     characterBase = CharacterBase.getInstance(context);
+        Character[]       unknowns      = new Character[characterBase.size()];
+        char[]            names         = new char[characterBase.size()];
+        LetterSamples[][] others        = new LetterSamples[characterBase.size()][];
+        int               total         = leaveOneOut(characterBase, Integer.MAX_VALUE, unknowns, names, others);
+
+        int[][] pyramids = {{8, 32}, {16, 32}, {8, 16, 32}};
+        float[] ratios   = {0.5f, 0.25f, 0.1f};
+        String  report   = "";
+        long    baseline = 0;
+        int     correct  = 0;
+
+        for (int p = -1; p < pyramids.length * ratios.length; ++p) {
+            String             name;
+            int                mode;
+            Identifier.Pyramid pyramid;
+            if (p < 0) {
+                mode    = Identifier.EXHAUSTIVE;
+                pyramid = Identifier.getPyramid();
+                name    = "exhaustive";
+            } else {
+                int[] sizes = pyramids[p / ratios.length];
+                mode    = Identifier.PYRAMID;
+                pyramid = Identifier.Pyramid.fromSizes(ratios[p % ratios.length], sizes);
+
+                name = "";
+                for (int size : sizes)
+                    name += (name.isEmpty() ? "" : "-") + size;
+                name += " @ " + Math.round(ratios[p % ratios.length] * 100) + "%";
+            }
+
+            // The counts are only read, not reset, so that nothing else's are lost
+            long made      = Identifier.getComparisonsMade();
+            int  right     = 0;
+            long timeStart = System.nanoTime();
+            for (int u = 0; u < total; ++u)
+                if (Identifier.identify(unknowns[u], others[u], mode, Identifier.OVERLAP, Identifier.getTopK(),
+                                        pyramid, Identifier.getShortlist()).getName() == names[u])
+                    right++;
+            long nanoseconds = System.nanoTime() - timeStart;
+
+            if (p < 0) {
+                baseline = nanoseconds;
+                correct  = right;
+            }
+
+            report += name + ": " + String.format("%.1f", nanoseconds / 1000.0f / Math.max(1, total)) + "us per sample (" +
+                      String.format("%.0f", 100 - 100.0f * nanoseconds / Math.max(1, baseline)) + "% saved), " +
+                      right + "/" + total + " correct (" + (right - correct >= 0 ? "+" : "") + (right - correct) + "), " +
+                      (Identifier.getComparisonsMade() - made) + " full comparisons\n";
+        }
+
+        Log.i(LOG_TAG, report);
+        return report;
+    }
+
+    /**
+     * Identify every bundled sample against the others (leave one out) with
+     * each scoring mode, keeping fewer and fewer samples of each letter, and
+     * compare how long each takes against how many samples it gets right. The
+     * scoring setting is left as it is
+     * @param context The context that the character base was loaded with
+     * @return A report with one line per scoring mode and number of samples
+     */
+    public static String scoring(Context context) {
+        CharacterBase characterBase = CharacterBase.getInstance(context);
+        int[]         perLetter     = {Integer.MAX_VALUE, 10, 5, 3};
+        int[]         modes         = {Identifier.OVERLAP, Identifier.CHAMFER};
+        String[]      modeNames     = {"overlap", "chamfer"};
+        String        report        = "";
+
+        for (int n : perLetter) {
+            Character[]       unknowns = new Character[characterBase.size()];
+            char[]            names    = new char[characterBase.size()];
+            LetterSamples[][] others   = new LetterSamples[characterBase.size()][];
+            int               total    = leaveOneOut(characterBase, n, unknowns, names, others);
+
+            for (int m = 0; m < modes.length; ++m) {
+                int  right     = 0;
+                long timeStart = System.nanoTime();
+                for (int u = 0; u < total; ++u)
+                    if (Identifier.identify(unknowns[u], others[u], Identifier.EXHAUSTIVE, modes[m], Identifier.getTopK(),
+                                            Identifier.getPyramid(), Identifier.getShortlist()).getName() == names[u])
+                        right++;
+                long nanoseconds = System.nanoTime() - timeStart;
+
+                report += modeNames[m] + ", " + (n == Integer.MAX_VALUE ? "all" : String.valueOf(n)) + " sample(s) per letter: " +
+                          String.format("%.1f", nanoseconds / 1000.0f / Math.max(1, total)) + "us per sample, " +
+                          right + "/" + total + " correct\n";
+            }
+        }
+
+        Log.i(LOG_TAG, report);
+        return report;
+    }
+
+    /**
+     * Identify every bundled sample against the others (leave one out) with
+     * each scoring mode, first exhaustively and then scoring only the samples
+     * with the nearest descriptors, and compare how long each takes against
+     * how many samples it gets right. The identification mode, scoring mode
+     * and shortlist settings are left as they are
+     * @param context The context that the character base was loaded with
+     * @return A report with one line per scoring mode and shortlist
+     */
+    public static String shortlist(Context context) {
+        CharacterBase     characterBase = CharacterBase.getInstance(context);
+        Character[]       unknowns      = new Character[characterBase.size()];
+        char[]            names         = new char[characterBase.size()];
+        LetterSamples[][] others        = new LetterSamples[characterBase.size()][];
+        int               total         = leaveOneOut(characterBase, Integer.MAX_VALUE, unknowns, names, others);
+
+        int[]    lengths   = {0, 96, 48, 24, 12};
+        int[]    modes     = {Identifier.OVERLAP, Identifier.CHAMFER};
+        String[] modeNames = {"overlap", "chamfer"};
+        String   report    = "";
+
+        for (int m = 0; m < modes.length; ++m) {
+            for (int n : lengths) {
+                int mode      = n == 0 ? Identifier.EXHAUSTIVE : Identifier.SHORTLIST;
+                int shortlist = n == 0 ? Identifier.getShortlist() : n;
+
+                int  right     = 0;
+                long timeStart = System.nanoTime();
+                for (int u = 0; u < total; ++u)
+                    if (Identifier.identify(unknowns[u], others[u], mode, modes[m], Identifier.getTopK(),
+                                            Identifier.getPyramid(), shortlist).getName() == names[u])
+                        right++;
+                long nanoseconds = System.nanoTime() - timeStart;
+
+                report += modeNames[m] + ", " + (n == 0 ? "exhaustive" : "nearest " + n) + ": " +
+                          String.format("%.1f", nanoseconds / 1000.0f / Math.max(1, total)) + "us per sample, " +
+                          right + "/" + total + " correct\n";
+            }
+        }
+
+        Log.i(LOG_TAG, report);
+        return report;
+    }
+
+    /**
+     * Score every bundled sample's template against every letter's samples,
+     * one sample at a time (SampleRange.overlap()) and 64 at a time
+     * (BitSlicedSamples), and compare how long each takes. Both must give the
+     * same overlap for every pair; any that differ are counted in the report
+     * @param context The context that the character base was loaded with
+     * @return A report with one line per scorer
+     */
+    public static String bitSliced(Context context) {
+        CharacterBase   characterBase = CharacterBase.getInstance(context);
+        LetterSamples[] letters       = characterBase.getAllSamples();
+        List<Character> unknowns      = characterBase.getAllCharacterSamples();
+
+        // Every letter's samples, sliced 64 at a time
+        SampleRange[]        ranges = new SampleRange[letters.length];
+        BitSlicedSamples[][] sliced = new BitSlicedSamples[letters.length][];
+        int                  pairs  = 0;
+        for (int l = 0; l < letters.length; ++l) {
+            ranges[l] = letters[l].all();
+            sliced[l] = new BitSlicedSamples[(ranges[l].size() + BitSlicedSamples.LANES - 1) / BitSlicedSamples.LANES];
+            for (int b = 0; b < sliced[l].length; ++b)
+                sliced[l][b] = new BitSlicedSamples(ranges[l], b * BitSlicedSamples.LANES);
+            pairs += ranges[l].size() * unknowns.size();
+        }
+
+        // One overlap per pair, from each scorer
+        int[] expected = new int[pairs];
+        int[] actual   = new int[pairs];
+        int[] lanes    = new int[BitSlicedSamples.LANES];
+
+        long timeStart = System.nanoTime();
+        int  i         = 0;
+        for (Character unknown : unknowns)
+            for (SampleRange range : ranges)
+                for (int j = 0; j < range.size(); ++j)
+                    expected[i++] = range.overlap(j, unknown.getTemplate());
+        long sampleNanoseconds = System.nanoTime() - timeStart;
+
+        timeStart = System.nanoTime();
+        i         = 0;
+        for (Character unknown : unknowns) {
+            for (BitSlicedSamples[] blocks : sliced) {
+                for (BitSlicedSamples block : blocks) {
+                    block.overlaps(unknown.getTemplate(), lanes);
+                    System.arraycopy(lanes, 0, actual, i, block.size());
+                    i += block.size();
+                }
+            }
+        }
+        long slicedNanoseconds = System.nanoTime() - timeStart;
+
+        int differ = 0;
+        for (i = 0; i < pairs; ++i)
+            if (expected[i] != actual[i])
+                differ++;
+
+        String report = "one at a time: " + String.format("%.1f", sampleNanoseconds / 1000.0f / Math.max(1, unknowns.size())) + "us per unknown\n" +
+                        "bit-sliced: " + String.format("%.1f", slicedNanoseconds / 1000.0f / Math.max(1, unknowns.size())) + "us per unknown (" +
+                        String.format("%.2f", (float)sampleNanoseconds / Math.max(1, slicedNanoseconds)) + "x), " +
+                        differ + "/" + pairs + " overlaps differ\n";
+
+        Log.i(LOG_TAG, report);
+        return report;
+    }
+
+    /**
+     * Set up a leave-one-out run: each bundled sample, and the samples of every
+     * letter to identify it against (at most the first perLetter samples of
+     * each, never including the sample itself)
+     * @param characterBase The loaded samples
+     * @param perLetter How many samples of each letter to keep
+     * @param unknowns Filled with each sample's image as a new Character, to be identified
+     * @param names Filled with the letter that each sample really is
+     * @param others Filled with the samples to identify each one against
+     * @return How many samples were set up
+     */
+    private static int leaveOneOut(CharacterBase characterBase, int perLetter, Character[] unknowns, char[] names,
+                                   LetterSamples[][] others) {
+        LetterSamples[] letters = new LetterSamples[characterBase.getAllSamples().length];
+        for (int l = 0; l < letters.length; ++l) {
+            List<Character> samples = characterBase.getCharacterSamples((char)('a' + l));
+            letters[l] = new LetterSamples(samples.subList(0, Math.min(perLetter, samples.size())));
+        }
+
+        int s = 0;
+        for (int l = 0; l < letters.length; ++l) {
+            List<Character> samples = characterBase.getCharacterSamples((char)('a' + l));
+            for (int j = 0; j < samples.size() && s < unknowns.length; ++j, ++s) {
+                Character sample = samples.get(j);
+
+                // Classified again from its image, as an unknown glyph would
+                // be. The sample's own feature class has been balanced towards
+                // its letter's majority, so copying it would give the answer away
+                unknowns[s] = new Character(sample.getImage());
+                names[s]    = sample.getName();
+
+                List<Character> rest = characterBase.getCharacterSamples((char)('a' + l));
+                rest.remove(j);
+                others[s]    = letters.clone();
+                others[s][l] = new LetterSamples(rest.subList(0, Math.min(perLetter, rest.size())));
+            }
+        }
+        return s;
+    }
+}
@@ -0,0 +1,347 @@
+package fedffm.ribbit;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+/**
+ * A black and white image packed one bit per pixel. Each row is stored in
+ * 64-bit words: pixel x of row y lives in bit (x % 64) of the word
+ * words[y * wordsPerRow + x / 64]. A set bit is a black pixel
+ *
+ * An image can also be a view of a rectangle inside another image: it shares
+ * the other image's words, and only remembers where the rectangle starts and
+ * how many words make up a row of the other image (the stride). Segmentation
+ * hands out views, so a character costs nothing until copy() is called
+ */
+public class BinaryImage {
+    // Any pixel darker than this counts as black when a Bitmap is packed: an
+    // opaque rgb(25, 25, 25), spelled out so that it doesn't need
+    // Color.rgb() (which a JVM unit test can't run)
+    private static final int DARKNESS = 0xFF191919;
+
+    private int    width;
+    private int    height;
+    private int    wordsPerRow;
+    private long[] words;
+
+    // Where this image starts inside of words, and the number of words in
+    // each row of words (the same as wordsPerRow, unless this is a view)
+    private int    xOffset;
+    private int    yOffset;
+    private int    stride;
+
+    // Non-default
+    public BinaryImage(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("width and height must be > 0");
+
+        this.width       = width;
+        this.height      = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words       = new long[wordsPerRow * height];
+        this.stride      = wordsPerRow;
+    }
+
+    // A view of part of another image
+    private BinaryImage(BinaryImage parent, int x, int y, int width, int height) {
+        this.width       = width;
+        this.height      = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words       = parent.words;
+        this.xOffset     = parent.xOffset + x;
+        this.yOffset     = parent.yOffset + y;
+        this.stride      = parent.stride;
+    }
+
+    /**
+     * Pack a bitmap, using the same "is this pixel black?" test that the
+     * Classifier has always applied to the sample images
+     * @param bitmap The image to pack
+     * @return The packed image
+     */
+    public static BinaryImage fromBitmap(Bitmap bitmap) {
+        int width  = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] row  = new int[width];
+        BinaryImage image = new BinaryImage(width, height);
+
+        for (int y = 0; y < height; ++y) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; ++x)
+                if (row[x] < DARKNESS)
+                    image.set(x, y);
+        }
+        return image;
+    }
+
+    /**
+     * Pack ARGB pixels with the same test as fromBitmap(), for images that
+     * weren't decoded into a Bitmap (see SamplePackCompiler)
+     * @param pixels The pixels, row by row
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return The packed image
+     */
+    static BinaryImage fromPixels(int[] pixels, int width, int height) {
+        BinaryImage image = new BinaryImage(width, height);
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x)
+                if (pixels[y * width + x] < DARKNESS)
+                    image.set(x, y);
+        return image;
+    }
+
+    /**
+     * Unpack the image into a black and white bitmap (for display)
+     * @return A new bitmap
+     */
+    public Bitmap toBitmap() {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x)
+                pixels[y * width + x] = get(x, y) ? Color.BLACK : Color.WHITE;
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    // Getters
+    public int getWidth()       {return this.width;}
+    public int getHeight()      {return this.height;}
+    public int getWordsPerRow() {return this.wordsPerRow;}
+
+    /**
+     * Is a pixel black?
+     * @param x The column
+     * @param y The row
+     * @return true if the pixel is black
+     */
+    public boolean get(int x, int y) {
+        checkBounds(x, y);
+        x += xOffset;
+        return (words[(yOffset + y) * stride + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Make a pixel black (a view shares its pixels with the image it came from)
+     * @param x The column
+     * @param y The row
+     */
+    public void set(int x, int y) {
+        checkBounds(x, y);
+        x += xOffset;
+        words[(yOffset + y) * stride + (x >>> 6)] |= 1L << x;
+    }
+
+    /**
+     * Make a pixel white (a view shares its pixels with the image it came from)
+     * @param x The column
+     * @param y The row
+     */
+    public void clear(int x, int y) {
+        checkBounds(x, y);
+        x += xOffset;
+        words[(yOffset + y) * stride + (x >>> 6)] &= ~(1L << x);
+    }
+
+    /**
+     * Make a rectangle white, a word at a time
+     * @param x The first column of the rectangle
+     * @param y The first row of the rectangle
+     * @param w The width of the rectangle
+     * @param h The height of the rectangle
+     */
+    public void clear(int x, int y, int w, int h) {
+        if (x < 0 || y < 0 || x + w > width || y + h > height)
+            throw new IllegalArgumentException("x + width must be <= image width, y + height must be <= image height");
+        if (w <= 0 || h <= 0)
+            return;
+
+        int first = xOffset + x;
+        int last  = xOffset + x + w - 1;
+
+        for (int row = yOffset + y; row < yOffset + y + h; ++row) {
+            for (int i = first >>> 6; i <= last >>> 6; ++i) {
+                // Only touch the columns inside of [first, last]
+                long mask = -1L;
+                if (i == first >>> 6)
+                    mask &= -1L << first;
+                if (i == last >>> 6 && (last & 63) != 63)
+                    mask &= (1L << (last + 1)) - 1;
+
+                words[row * stride + i] &= ~mask;
+            }
+        }
+    }
+
+    /**
+     * One 64-pixel word of a row
+     * @param y The row
+     * @param i Which word of the row (pixels 64 * i through 64 * i + 63)
+     * @return The word; bits past the right edge of the image are always 0
+     */
+    public long word(int y, int i) {
+        int base = (yOffset + y) * stride;
+
+        // Not a view (or a view that happens to be lined up with the words)
+        if ((xOffset & 63) == 0) {
+            long word = words[base + (xOffset >>> 6) + i];
+            if (i == wordsPerRow - 1 && (width & 63) != 0)
+                word &= (1L << width) - 1;
+            return word;
+        }
+
+        // Pull 64 pixels out of (at most) two neighbouring words
+        int  bit   = xOffset + (i << 6);
+        int  shift = bit & 63;
+        long word  = words[base + (bit >>> 6)] >>> shift;
+        if ((bit >>> 6) + 1 < stride)
+            word |= words[base + (bit >>> 6) + 1] << (64 - shift);
+
+        // Drop whatever spilled in past the right edge of the image
+        if (i == wordsPerRow - 1 && (width & 63) != 0)
+            word &= (1L << width) - 1;
+        return word;
+    }
+
+    /**
+     * Overwrite one 64-pixel word of a row, as it was read back from word()
+     * (see SamplePack). Only for an image that isn't a view
+     * @param y The row
+     * @param i Which word of the row
+     * @param word The pixels; bits past the right edge of the image must be 0
+     */
+    void setWord(int y, int i, long word) {
+        words[y * stride + i] = word;
+    }
+
+    /**
+     * How many black pixels are in a row?
+     * @param y The row
+     * @return The number of black pixels
+     */
+    public int countRow(int y) {
+        int count = 0;
+        for (int i = 0; i < wordsPerRow; ++i)
+            count += Long.bitCount(word(y, i));
+        return count;
+    }
+
+    /**
+     * How many black pixels are in part of a row?
+     * @param y The row
+     * @param x0 The first column
+     * @param x1 One past the last column
+     * @return The number of black pixels in columns x0 through x1 - 1
+     */
+    public int countRow(int y, int x0, int x1) {
+        if (x0 >= x1)
+            return 0;
+
+        int first = x0 >>> 6;
+        int last  = (x1 - 1) >>> 6;
+        int count = 0;
+
+        for (int i = first; i <= last; ++i) {
+            long word = word(y, i);
+
+            // Mask off the columns outside of [x0, x1)
+            if (i == first)
+                word &= -1L << x0;
+            if (i == last && (x1 & 63) != 0)
+                word &= (1L << x1) - 1;
+
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * The vertical projection of the image: how many black pixels are in each
+     * column. Every row is read a word at a time, and only the black pixels
+     * cost anything beyond that
+     * @return One count per column
+     */
+    public int[] columnProfile() {
+        return columnProfile(0, height);
+    }
+
+    /**
+     * The vertical projection of a band of rows
+     * @param yFirst The first row of the band
+     * @param yLast One past the last row of the band
+     * @return One count per column
+     */
+    public int[] columnProfile(int yFirst, int yLast) {
+        int[] columns = new int[width];
+
+        for (int y = yFirst; y < yLast; ++y) {
+            for (int i = 0; i < wordsPerRow; ++i) {
+                long word = word(y, i);
+
+                // Visit each set bit, lowest first
+                while (word != 0) {
+                    columns[(i << 6) + Long.numberOfTrailingZeros(word)]++;
+                    word &= word - 1;
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * How many black pixels does the image contain?
+     * @return The number of black pixels
+     */
+    public int count() {
+        int count = 0;
+        for (int y = 0; y < height; ++y)
+            count += countRow(y);
+        return count;
+    }
+
+    /**
+     * A view of a rectangle inside of the image. Nothing is copied: the view
+     * reads (and writes) the pixels of this image
+     * @param x The first column of the rectangle
+     * @param y The first row of the rectangle
+     * @param w The width of the rectangle
+     * @param h The height of the rectangle
+     * @return A view of size w x h
+     */
+    public BinaryImage view(int x, int y, int w, int h) {
+        if (x < 0 || y < 0 || x + w > width || y + h > height)
+            throw new IllegalArgumentException("x + width must be <= image width, y + height must be <= image height");
+        if (w <= 0 || h <= 0)
+            throw new IllegalArgumentException("width and height must be > 0");
+
+        return new BinaryImage(this, x, y, w, h);
+    }
+
+    /**
+     * Copy the image into words of its own, lined up at column 0
+     * @return A new image that shares nothing with this one
+     */
+    public BinaryImage copy() {
+        BinaryImage copy = new BinaryImage(width, height);
+        for (int y = 0; y < height; ++y)
+            for (int i = 0; i < wordsPerRow; ++i)
+                copy.words[y * wordsPerRow + i] = word(y, i);
+        return copy;
+    }
+
+    /**
+     * Copy a rectangle out of the image
+     * @param x The first column of the rectangle
+     * @param y The first row of the rectangle
+     * @param w The width of the rectangle
+     * @param h The height of the rectangle
+     * @return A new image of size w x h
+     */
+    public BinaryImage crop(int x, int y, int w, int h) {
+        return view(x, y, w, h).copy();
+    }
+
+    private void checkBounds(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            throw new IllegalArgumentException("x must be < image width, y must be < image height");
+    }
+}
@@ -0,0 +1,71 @@
+package fedffm.ribbit;
+
+/**
+ * Up to LANES sample templates stored bit-sliced: one long per pixel of the
+ * template, with bit s of it the colour of that pixel in sample s. An unknown
+ * template is then scored against every sample at once, by adding the long of
+ * each of its black pixels into per-sample counters that are themselves kept
+ * bit-sliced (bit b of every lane's count in one long), a carry at a time.
+ *
+ * The overlaps are the same as SampleRange.overlap() gives sample by sample.
+ * Which way is faster is a question for Benchmark.bitSliced(): a sample costs
+ * SampleRange only Template.WORDS ANDs and bit counts, while here every black
+ * pixel of the unknown ripples a carry through the counters
+ */
+public class BitSlicedSamples {
+    public static final int LANES = 64;
+
+    // Enough bits to count every pixel of a template
+    private static final int COUNTER_BITS = 32 - Integer.numberOfLeadingZeros(Template.SIZE * Template.SIZE);
+
+    private long[] slices;
+    private int    count;
+
+    /**
+     * Slice the samples of a range from first up to (at most) LANES of them
+     * @param range The samples
+     * @param first The first sample to slice
+     */
+    public BitSlicedSamples(SampleRange range, int first) {
+        this.count  = Math.min(LANES, range.size() - first);
+        this.slices = new long[Template.SIZE * Template.SIZE];
+
+        for (int s = 0; s < count; ++s) {
+            long[] words = range.getSample(first + s).getTemplate().getWords();
+            for (int p = 0; p < slices.length; ++p)
+                slices[p] |= ((words[p / 64] >>> (p % 64)) & 1L) << s;
+        }
+    }
+
+    // Getters
+    public int size() {return this.count;}
+
+    /**
+     * How many black pixels does each sample share with an unknown template?
+     * @param unknown The unknown character's template
+     * @param overlaps Filled with the overlap of each sample (at least size() long)
+     */
+    public void overlaps(Template unknown, int[] overlaps) {
+        long[] words   = unknown.getWords();
+        long[] counter = new long[COUNTER_BITS];
+
+        for (int w = 0; w < words.length; ++w) {
+            // Only the unknown's black pixels add anything
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                long carry = slices[w * 64 + Long.numberOfTrailingZeros(word)];
+                for (int b = 0; carry != 0; ++b) {
+                    long next = counter[b] & carry;
+                    counter[b] ^= carry;
+                    carry = next;
+                }
+            }
+        }
+
+        for (int s = 0; s < count; ++s) {
+            int overlap = 0;
+            for (int b = 0; b < COUNTER_BITS; ++b)
+                overlap |= (int)((counter[b] >>> s) & 1L) << b;
+            overlaps[s] = overlap;
+        }
+    }
+}
@@ -1,53 +1,78 @@
 package fedffm.ribbit;
 
-import android.graphics.Bitmap;
-
-
 public class Character {
-    private char    name;
-    private int     ascii;
-    private int     ratioClass;
-    private int     featureClass;
-    private Bitmap  bitmap;
+    private char        name;
+    private int         ascii;
+    private int         ratioClass;
+    private int         featureClass;
+    private BinaryImage image;
+    private volatile float[] descriptor;
+    private Template    template;
 
 
     // Default
     public Character() {
         this.name         = '?';
-        this.bitmap       = null;
+        this.image        = null;
     }
 
     // Non-default
-    public Character(Bitmap bitmap) {
+    public Character(BinaryImage image) {
         this.name         = '?';
-        this.bitmap       = bitmap;
+        this.image        = image;
         Classifier.determineRatioClass(this);
         Classifier.determineFeatureClass(this);
+        this.template     = new Template(image);
+    }
+
+    // Non-default, for a character whose classes are already known (a
+    // sample read back from a SamplePack), so the Classifier isn't run again
+    public Character(BinaryImage image, int ratioClass, int featureClass) {
+        this.name         = '?';
+        this.image        = image;
+        this.ratioClass   = ratioClass;
+        this.featureClass = featureClass;
+        this.template     = new Template(image);
     }
 
     // Setters
     public  void setName(char name)                {this.name = name;}
     public  void setAscii(Integer ascii)           {this.ascii = ascii;}
-    public  void setBitmap(Bitmap bitmap)          {this.bitmap = bitmap;}
+    public  void setImage(BinaryImage image)       {this.image = image;}
     public  void setRatioClass(int ratioClass)     {this.ratioClass = ratioClass;}
     public  void setFeatureClass(int featureClass) {this.featureClass = featureClass;}
+    public  void setDescriptor(float[] descriptor) {this.descriptor = descriptor;}
+    public  void setTemplate(Template template)    {this.template = template;}
 
     // Getters
-    public char    getName()         {return this.name;}
-    public Integer getAscii()        {return this.ascii;}
-    public Bitmap  getBitmap()       {return this.bitmap;}
-    public int     getRatioClass()   {return this.ratioClass;}
-    public int     getFeatureClass() {return this.featureClass;}
+    public char        getName()         {return this.name;}
+    public Integer     getAscii()        {return this.ascii;}
+    public BinaryImage getImage()        {return this.image;}
+    public int         getRatioClass()   {return this.ratioClass;}
+    public int         getFeatureClass() {return this.featureClass;}
+    public Template    getTemplate()     {return this.template;}
+
+    /**
+     * The character's shape descriptor (see Descriptor), worked out the first
+     * time it's asked for, since only some identification modes need it
+     * @return The descriptor, or null if the character has no image
+     */
+    public float[] getDescriptor() {
+        float[] descriptor = this.descriptor;
+        if (descriptor == null && this.image != null)
+            this.descriptor = descriptor = Descriptor.compute(this.image);
+        return descriptor;
+    }
 
     /**
      * Calculate a scaled size value based upon the area (in pixels)
-     * of the character's bitmap. This will help us estimate whether
+     * of the character's image. This will help us estimate whether
      * or not the segment is actually a single character
      * @return Return a scaled value which represents the size of the segment
      */
     public float sizeValue() {
-        assert bitmap != null;
+        assert image != null;
 
-        return ((float)bitmap.getWidth() * (float)(bitmap.getHeight()) / 1500);
+        return ((float)image.getWidth() * (float)(image.getHeight()) / 1500);
     }
 }
\ No newline at end of file
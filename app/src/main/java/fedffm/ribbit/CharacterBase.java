@@ -2,240 +2,634 @@ package fedffm.ribbit;
 
 import android.content.Context;
 import android.content.res.AssetManager;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class CharacterBase {
-    // Folder that contains all character samples
-    private final static String  ASSET_FOLDER = "characters/";
+    // Folder that contains all character samples (SamplePackCompiler reads
+    // the same images, and balances them the same way)
+    final static String          ASSET_FOLDER = "characters/";
     private final static String  LOG_TAG      = "CharacterBase";
     private final static int     FEATURE_TYPE = 0;
     private final static int     A_ASCII      = 97;
     private final static int     Z_ASCII      = 122;
-    private final static int     NUM_FILES    = 20;
-    private final static boolean BALANCE_FEATURES = true;
+    final static int             NUM_FILES    = 20;
+    final static boolean         BALANCE_FEATURES = true;
+    private final static boolean USE_SAMPLE_PACK  = true;
+    private final static boolean SAVE_LEARNED     = true;
+    private final static boolean PREFETCH         = true;
     private final static boolean LOGGING_ENABLED  = true;
     private final static boolean DETAILED_LOGGING_ENABLED  = true;
 
-    // The list of known characters
-    private List<Character> characters;
+    // How many threads decode and classify the asset images at once
+    private final static int     LOAD_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // Once the journal of learned samples holds this many, they are folded
+    // into the saved sample pack (checked once every letter is loaded, and
+    // after every sample that is learned from then on)
+    private final static int     COMPACT_AFTER = 256;
+
+    // The order that letters are loaded in the background: the most common
+    // letters in English first
+    private final static String  PREFETCH_ORDER = "etaoinshrdlcumwfgypbvkjxqz";
+
+    // The index of each letter's characters ('a' first), and any characters
+    // that aren't letters. Readers never lock: a LetterSamples never changes,
+    // so a new sample is published by building the letter a new one (under
+    // writeLock, so that two writers don't lose each other's samples) and
+    // swapping it in
+    private final AtomicReferenceArray<LetterSamples> letters;
+    private final List<Character>                     others;
+    private final Object                              writeLock = new Object();
     private Context context;
 
+    // Each letter's samples are loaded the first time they're asked for (or
+    // when the background prefetch gets to them). Whoever runs a letter's
+    // loader first does the loading; everyone else waits for it. Identifying
+    // a character still needs every letter (see Identifier.identify()), so
+    // this lets the app start (and a picture be taken and segmented) while
+    // the letters load, rather than making the first identification need
+    // fewer of them
+    private final List<FutureTask<Void>> loaders;
+    private final boolean                fromSamplePack;
+
+    // Every letter's images are decoded on this one pool of LOAD_THREADS
+    // threads, however many letters are loading at once. Shut down once
+    // every letter is loaded
+    private final ExecutorService        decoders;
+    private int                          packGeneration;
+
+    // Samples learned on earlier runs (see addNewCharacter()), kept for
+    // each letter until the letter loads, and where new ones are written
+    private final List<List<Character>>  learned;
+    private SampleJournal                journal;
+
+    // When the character base was created, how long it took until every
+    // letter was loaded (0 until then), and how long each letter's images took
+    // to decode and classify (summed over every thread that worked on them)
+    private final long           startNanoTime;
+    private volatile long        loadNanoseconds;
+    private final AtomicLongArray letterLoadNanoseconds;
+    private volatile int         loadThreads;
+    private final AtomicBoolean  finished = new AtomicBoolean(false);
+    private final AtomicBoolean  compacting = new AtomicBoolean(false);
+
     // Singleton (so that we only have to instantiate
-    // the character base one time
-    private static CharacterBase instance = null;
+    // the character base one time). Volatile, so that a thread that sees the
+    // instance also sees everything the constructor did
+    private static volatile CharacterBase instance = null;
 
     // Prevent instantiation outside of this class
     private CharacterBase(Context context) {
         // Initialize the member variables
-        this.characters = new ArrayList<>();
+        this.letters    = new AtomicReferenceArray<>(Z_ASCII - A_ASCII + 1);
+        this.others     = new CopyOnWriteArrayList<>();
         this.context    = context;
+        this.loaders    = new ArrayList<>();
+        this.learned    = new ArrayList<>();
+        this.startNanoTime         = System.nanoTime();
+        this.letterLoadNanoseconds = new AtomicLongArray(Z_ASCII - A_ASCII + 1);
+        this.decoders              = Executors.newFixedThreadPool(Math.max(1, LOAD_THREADS), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CharacterBase-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        for (int i = A_ASCII; i <= Z_ASCII; ++i) {
+            this.learned.add(new ArrayList<Character>());
+            this.letters.set(i - A_ASCII, new LetterSamples(new ArrayList<Character>()));
+        }
 
-        // Load the assets
-        createCharacters(ASSET_FOLDER);
+        // The compiled samples (if there are any) load all at once, and
+        // quickly; otherwise each letter's assets are loaded when needed
+        this.fromSamplePack = USE_SAMPLE_PACK && loadSamplePack();
+        if (USE_SAMPLE_PACK && SAVE_LEARNED)
+            openJournal();
+        for (int i = A_ASCII; i <= Z_ASCII; ++i)
+            this.loaders.add(new FutureTask<Void>(this.fromSamplePack ? loaded() : letterLoader((char)i)));
+
+        if (this.fromSamplePack)
+            awaitAllLetters();
+        else if (PREFETCH)
+            startPrefetch();
     }
 
-    // Return the instance of this class
+    // Return the instance of this class. The character base is ready to use
+    // right away, but its samples might still be loading. Only the first call
+    // locks; it's created exactly once however many threads ask at the same time
     public static CharacterBase getInstance(Context context) {
-        if (instance == null)
-            instance = new CharacterBase(context);
-        return instance;
+        CharacterBase characterBase = instance;
+        if (characterBase == null) {
+            synchronized (CharacterBase.class) {
+                characterBase = instance;
+                if (characterBase == null)
+                    instance = characterBase = new CharacterBase(context);
+            }
+        }
+        return characterBase;
     }
 
     /**
-     * Store the path to each asset in the list
+     * Store the path to each of a letter's assets in the list
      * @param directory The parent directory of the assets
+     * @param name The letter
      * @return List of Strings: each String is a full path to an image
      * @throws IOException
      */
-    private List<String> getAssetPaths(String directory) throws IOException {
+    private List<String> getAssetPaths(String directory, char name) throws IOException {
         // Store the path to each asset as a String
         List<String> assetPaths = new ArrayList<>();
 
-        // Get the array of folders and the array of files for each folder
-        for (int i = A_ASCII; i <= Z_ASCII; ++i) {
-            String path = directory + (char)i + "/";
-            for (int j = 1; j <= NUM_FILES; ++j) {
-                assetPaths.add(path + j + ".jpg");
-            }
+        // Get the array of files in the letter's folder
+        String path = directory + name + "/";
+        for (int j = 1; j <= NUM_FILES; ++j) {
+            assetPaths.add(path + j + ".jpg");
         }
         return assetPaths;
     }
 
-    private void balanceFeatureAssignments(List<Integer> featureOccurances) {
-        int numSamples = 0;
-        int count      = 0;
+    // A loader for a letter whose samples are already in place
+    private static Callable<Void> loaded() {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        };
+    }
 
-        for (int i = A_ASCII; i <= Z_ASCII; ++i) {
-            List<Integer> features = new ArrayList<>();
-            int featureTypeDefault = 0;
-            int featureType1       = 0;
-            int featureType2       = 0;
-            int featureType3       = 0;
-            int featureType4       = 0;
-            int featureType5       = 0;
-            int featureType6       = 0;
-            int featureType7       = 0;
-            int featureType8       = 0;
-            int featureType9       = 0;
-            int featureType10      = 0;
-            int featureType11      = 0;
-            int featureType12      = 0;
-
-            for (int j = 0; j < NUM_FILES; ++j) {
-                switch(featureOccurances.get(numSamples)) {
-                    case 0:
-                        featureTypeDefault++;
-                        break;
-                    case 1:
-                        featureType1++;
-                        break;
-                    case 2:
-                        featureType2++;
-                        break;
-                    case 3:
-                        featureType3++;
-                        break;
-                    case 4:
-                        featureType4++;
-                        break;
-                    case 5:
-                        featureType5++;
-                        break;
-                    case 6:
-                        featureType6++;
-                        break;
-                    case 7:
-                        featureType7++;
-                        break;
-                    case 8:
-                        featureType8++;
-                        break;
-                    case 9:
-                        featureType9++;
-                        break;
-                    case 10:
-                        featureType10++;
-                        break;
-                    case 11:
-                        featureType11++;
-                        break;
-                    case 12:
-                        featureType12++;
-                        break;
-                }
-                numSamples++;
+    private Callable<Void> letterLoader(final char name) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                createCharacters(ASSET_FOLDER, name);
+                return null;
             }
+        };
+    }
 
-            features.add(featureTypeDefault);
-            features.add(featureType1);
-            features.add(featureType2);
-            features.add(featureType3);
-            features.add(featureType4);
-            features.add(featureType5);
-            features.add(featureType6);
-            features.add(featureType7);
-            features.add(featureType8);
-            features.add(featureType9);
-            features.add(featureType10);
-            features.add(featureType11);
-            features.add(featureType12);
-
-            int mostCommonFeatureType = Collections.max(features);
-
-            for (int j = 0; j < NUM_FILES; ++j) {
-                this.characters.get(count).setFeatureClass(features.indexOf(mostCommonFeatureType));
-                count++;
+    /**
+     * Load every letter on a background thread, the most common letters first,
+     * so that they're likely to be ready by the time they're asked for
+     */
+    private void startPrefetch() {
+        Thread prefetch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    awaitAllLetters();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Couldn't prefetch the character base", e);
+                }
             }
+        }, "CharacterBase-prefetch");
+        prefetch.setDaemon(true);
+        prefetch.start();
+    }
+
+    /**
+     * Make sure that a letter's samples are loaded: load them on this thread
+     * if nobody has started to, or else wait for whoever did
+     * @param index The letter (0 is 'a')
+     */
+    private void awaitLetter(int index) {
+        FutureTask<Void> loader = this.loaders.get(index);
+        loader.run();
+
+        try {
+            loader.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading the character base", ie);
+        } catch (ExecutionException ee) {
+            throw new RuntimeException("Couldn't load the character base", ee.getCause());
+        }
+    }
+
+    /**
+     * Make sure that every letter's samples are loaded, lending a hand with
+     * any letter that nobody has started on yet
+     */
+    private void awaitAllLetters() {
+        for (int i = 0; i < PREFETCH_ORDER.length(); ++i)
+            this.loaders.get(PREFETCH_ORDER.charAt(i) - A_ASCII).run();
+        for (int i = A_ASCII; i <= Z_ASCII; ++i)
+            awaitLetter(i - A_ASCII);
+
+        finishLoading();
+    }
+
+    /**
+     * Once every letter is loaded: note how long that took, and have the
+     * samples compiled for next time (if they didn't come from a pack). Only
+     * the first thread to get here does anything. That might be the thread
+     * that created the character base, or one that is identifying, so the
+     * compiling is left to a thread of its own
+     */
+    private void finishLoading() {
+        if (this.finished.get() || !this.finished.compareAndSet(false, true))
+            return;
+
+        this.loadNanoseconds = System.nanoTime() - this.startNanoTime;
+        this.decoders.shutdown();
+
+        // Compile the samples for next time, along with whatever was learned
+        if (USE_SAMPLE_PACK && (!this.fromSamplePack || (this.journal != null && this.journal.size() >= COMPACT_AFTER)))
+            startCompaction();
+
+        if (LOGGING_ENABLED) {
+            String letterTimes = "";
+            for (int i = A_ASCII; i <= Z_ASCII; ++i)
+                letterTimes += " " + (char)i + ":" + letterLoadNanoseconds.get(i - A_ASCII) / 1000000 + "ms";
+            Log.i(LOG_TAG, "Every letter loaded after " + loadNanoseconds / 1000000 + "ms" +
+                           (fromSamplePack ? " (from a sample pack)" : ", decoded on " + loadThreads + " thread(s):" + letterTimes));
         }
     }
 
     /**
-     * Use all of the asset images to create the characters that will
-     * comprise our character base
+     * Give every sample of a letter the feature class that most of them have
+     * (the lowest such class, if there's a tie)
+     * @param samples The samples of one letter
+     */
+    static void balanceFeatureAssignments(List<Character> samples) {
+        int[] features = new int[LetterSamples.FEATURE_CLASSES];
+        for (Character sample : samples)
+            if (sample.getFeatureClass() >= 0 && sample.getFeatureClass() < features.length)
+                features[sample.getFeatureClass()]++;
+
+        int mostCommonFeatureType = 0;
+        for (int f = 1; f < features.length; ++f)
+            if (features[f] > features[mostCommonFeatureType])
+                mostCommonFeatureType = f;
+
+        for (Character sample : samples)
+            sample.setFeatureClass(mostCommonFeatureType);
+    }
+
+    /**
+     * Use a letter's asset images to create the characters that will
+     * comprise its part of our character base
      * @param directory The parent directory of the assets
+     * @param name The letter
      */
-    private void createCharacters(String directory) {
+    private void createCharacters(String directory, char name) {
         // If the asset manager doesn't load our assets, who will??
         AssetManager assetManager = this.context.getAssets();
         List<String> assetPaths = new ArrayList<>();
 
         // Get the path to each asset
         try {
-            assetPaths = getAssetPaths(directory);
+            assetPaths = getAssetPaths(directory, name);
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        // Create an input stream
-        InputStream inputStream = null;
+        // Decode and classify the files on a pool of threads, each into its
+        // own slot, so that the characters come back in the same order no
+        // matter which thread finished first
+        List<Character> samples = new ArrayList<>(Arrays.asList(loadCharacters(assetManager, assetPaths)));
 
         int count = 0;
-        Map <Integer, Integer> featureTypes = new HashMap<>();
-        List<Integer> featureOccurances = new ArrayList<>();
-        // Load each file referenced in the list of asset paths
-        for (int i = 0; i < assetPaths.size(); ++i) {
+        for (Character character : samples)
+            if (character.getFeatureClass() == FEATURE_TYPE)
+                count++;
+
+        // Balancing changes the feature classes that the index is keyed by
+        if (BALANCE_FEATURES)
+            balanceFeatureAssignments(samples);
+
+        // Samples added before the letter was loaded can't exist (adding one
+        // waits for its letter), so the letter is still empty. Samples learned
+        // on earlier runs go after the assets, as they did when learned
+        synchronized (this.writeLock) {
+            samples.addAll(this.learned.get(name - A_ASCII));
+            this.learned.get(name - A_ASCII).clear();
+            this.letters.set(name - A_ASCII, new LetterSamples(samples));
+        }
+        this.loadThreads = Math.min(LOAD_THREADS, assetPaths.size());
+
+        if (LOGGING_ENABLED)
+            Log.i(LOG_TAG, "Feature type " + FEATURE_TYPE + " characters: " + name + ": " + count + "/" + samples.size());
+        if (DETAILED_LOGGING_ENABLED && !samples.isEmpty())
+            Log.i(LOG_TAG, name + ":" + samples.get(0).getFeatureClass());
+    }
+
+    /**
+     * Decode every asset image and create a character from it, on the shared
+     * pool of decoders (so on up to LOAD_THREADS threads at once, however many
+     * letters are loading). Each thread adds the time it spent to the
+     * character's letter
+     * @param assetManager Where the images are
+     * @param assetPaths The full path to each image
+     * @return One character per path, in the same order
+     */
+    private Character[] loadCharacters(final AssetManager assetManager, List<String> assetPaths) {
+        Character[]             loaded  = new Character[assetPaths.size()];
+        long[]                  elapsed = new long[assetPaths.size()];
+        List<Future<Character>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < assetPaths.size(); ++i)
+                futures.add(this.decoders.submit(loadCharacter(assetManager, assetPaths.get(i), elapsed, i)));
+
+            // Waiting on every future also makes whatever the workers wrote
+            // visible to this thread
+            for (int i = 0; i < futures.size(); ++i)
+                loaded[i] = futures.get(i).get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading the character base", ie);
+        } catch (ExecutionException ee) {
+            throw new RuntimeException("Couldn't load the character base", ee.getCause());
+        } finally {
+            // Anything left over if a decode failed (a no-op otherwise)
+            for (Future<Character> future : futures)
+                future.cancel(true);
+        }
+
+        for (int i = 0; i < loaded.length; ++i) {
+            char name = loaded[i].getName();
+            if (name >= A_ASCII && name <= Z_ASCII)
+                this.letterLoadNanoseconds.addAndGet(name - A_ASCII, elapsed[i]);
+        }
+        return loaded;
+    }
 
-            // Get the name of the current file and character
-            String fileName = assetPaths.get(i);
-            char characterName = fileName.charAt(11);
+    private static Callable<Character> loadCharacter(final AssetManager assetManager, final String fileName,
+                                                     final long[] elapsed, final int index) {
+        return new Callable<Character>() {
+            @Override
+            public Character call() throws IOException {
+                long timeStart = System.nanoTime();
+
+                // Get the name of the current file's character
+                char characterName = fileName.charAt(11);
+
+                // Create a bitmap from the asset, pack it into a binary image, and use
+                // that to create a new character object
+                Bitmap bitmap;
+                InputStream inputStream = assetManager.open(fileName);
+                try {
+                    bitmap = BitmapFactory.decodeStream(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+                if (bitmap == null)
+                    throw new IOException("Couldn't decode " + fileName);
+
+                Character character = new Character(BinaryImage.fromBitmap(bitmap));
+                bitmap.recycle();
+                character.setName(characterName);
+                character.setAscii((int) characterName);
+
+                elapsed[index] = System.nanoTime() - timeStart;
+                return character;
+            }
+        };
+    }
 
-            // Create an inputstream in order to open the asset
+    /**
+     * Load the samples from a SamplePack: the one saved in the app's files if
+     * there is one (mapped straight from the file), since it also holds any
+     * samples that were learned, or else the one bundled with the assets
+     * (built from the same images by SamplePackCompiler)
+     * @return Whether the samples were loaded
+     */
+    private boolean loadSamplePack() {
+        SamplePack pack = null;
+
+        File file = new File(this.context.getFilesDir(), SamplePack.FILE_NAME);
+        if (file.exists()) {
             try {
-                inputStream = assetManager.open(fileName);
+                FileInputStream inputStream = new FileInputStream(file);
+                try {
+                    FileChannel channel = inputStream.getChannel();
+                    pack = SamplePack.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                } finally {
+                    inputStream.close();
+                }
             } catch (IOException e) {
-                e.printStackTrace();
+                // It will be written again once the assets are loaded
+                Log.w(LOG_TAG, "Discarding saved sample pack: " + e.getMessage());
+                file.delete();
             }
+        }
 
-            // Create a bitmap from the input stream, and add use it to create a new character
-            // object
-            Character character = new Character(BitmapFactory.decodeStream(inputStream));
-            character.setName(characterName);
-            character.setAscii((int) characterName);
-            addNewCharacter(character);
+        if (pack == null) {
+            try {
+                InputStream inputStream = this.context.getAssets().open(SamplePack.FILE_NAME);
+                try {
+                    pack = SamplePack.read(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                if (LOGGING_ENABLED)
+                    Log.i(LOG_TAG, "No usable bundled sample pack: " + e.getMessage());
+            }
+        }
 
-           featureOccurances.add(character.getFeatureClass());
+        if (pack == null)
+            return false;
+
+        List<Character> samples = pack.getCharacters();
+        this.packGeneration = pack.getGeneration();
+
+        // The classes in the pack are already balanced
+        List<List<Character>> byLetter = new ArrayList<>();
+        List<Character>       others   = new ArrayList<>();
+        for (int i = A_ASCII; i <= Z_ASCII; ++i)
+            byLetter.add(new ArrayList<Character>());
+        for (Character sample : samples) {
+            char name = sample.getName();
+            if (name >= A_ASCII && name <= Z_ASCII)
+                byLetter.get(name - A_ASCII).add(sample);
+            else
+                others.add(sample);
+        }
+        for (int i = A_ASCII; i <= Z_ASCII; ++i)
+            this.letters.set(i - A_ASCII, new LetterSamples(byLetter.get(i - A_ASCII)));
+        this.others.addAll(others);
+
+        if (LOGGING_ENABLED)
+            Log.i(LOG_TAG, samples.size() + " samples loaded from a sample pack");
+        return true;
+    }
 
-            if (character.getFeatureClass() == FEATURE_TYPE) {
-                if (featureTypes.containsKey((int)characterName))
-                    count++;
-                else
-                    count = 1;
+    /**
+     * Save the samples as they are now (everything loaded from the assets or
+     * a pack, and everything learned since) as a SamplePack in the app's
+     * files. The pack is written next to the old one and then renamed over it,
+     * so a start that is cut short never leaves half a pack behind
+     * @param generation The last journal generation that the pack holds
+     * @return Whether the pack was saved
+     */
+    private boolean saveSamplePack(int generation) {
+        File file      = new File(this.context.getFilesDir(), SamplePack.FILE_NAME);
+        File temporary = new File(this.context.getFilesDir(), SamplePack.FILE_NAME + ".tmp");
 
-                featureTypes.put((int)characterName, count);
+        try {
+            FileOutputStream outputStream = new FileOutputStream(temporary);
+            try {
+                new SamplePack(allCharacters(), generation).write(outputStream);
+                outputStream.getFD().sync();
+            } finally {
+                outputStream.close();
             }
+
+            if (!temporary.renameTo(file))
+                throw new IOException("Couldn't rename " + temporary + " to " + file);
+            return true;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't save the sample pack", e);
+            temporary.delete();
+            return false;
         }
+    }
 
-        if (LOGGING_ENABLED) {
-            Log.i(LOG_TAG, "Feature type " + FEATURE_TYPE + " characters: ");
-            for (int character : featureTypes.keySet()) {
-                Log.i(LOG_TAG, (char)character + ": " + featureTypes.get(character) + "/20");
+    /**
+     * Open the journal of learned samples, and put back every sample that it
+     * holds: right away if the letters came from a pack, or else as each
+     * letter is loaded
+     */
+    private void openJournal() {
+        try {
+            this.journal = SampleJournal.open(new File(this.context.getFilesDir(), SampleJournal.FILE_NAME), this.packGeneration);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Learned samples won't be saved", e);
+            return;
+        }
+
+        List<Character> others = new ArrayList<>();
+        for (Character sample : this.journal.getReplayed()) {
+            char name = sample.getName();
+            if (name < A_ASCII || name > Z_ASCII)
+                others.add(sample);
+            else
+                this.learned.get(name - A_ASCII).add(sample);
+        }
+        this.others.addAll(others);
+
+        // With a pack every letter is already there, so the samples go
+        // straight in, rather than waiting for each letter to load
+        if (this.fromSamplePack) {
+            for (int i = A_ASCII; i <= Z_ASCII; ++i) {
+                List<Character> letter = new ArrayList<>(this.letters.get(i - A_ASCII).getCharacters());
+                letter.addAll(this.learned.get(i - A_ASCII));
+                this.learned.get(i - A_ASCII).clear();
+                this.letters.set(i - A_ASCII, new LetterSamples(letter));
             }
         }
 
-        if (BALANCE_FEATURES)
-            this.balanceFeatureAssignments(featureOccurances);
+        if (LOGGING_ENABLED)
+            Log.i(LOG_TAG, this.journal.size() + " learned samples replayed");
+    }
+
+    /**
+     * Compact on a background thread, so that writing (and syncing) the pack
+     * never holds up whoever finished loading or learned a sample. Identifying
+     * carries on while it runs; only learning a new sample waits for it. Does
+     * nothing if a compaction is already under way
+     */
+    private void startCompaction() {
+        if (!this.compacting.compareAndSet(false, true))
+            return;
+
+        Thread compaction = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Couldn't compact the learned samples", e);
+                } finally {
+                    compacting.set(false);
+                }
+            }
+        }, "CharacterBase-compact");
+        compaction.setDaemon(true);
+        compaction.start();
+    }
+
+    /**
+     * Fold every learned sample into the saved SamplePack, and start the
+     * journal over. If the app stops between the two, the journal's
+     * generation tells the next start that its samples are already in the pack.
+     * Holds writeLock, so that no sample is learned in between (readers carry on)
+     */
+    private void compact() {
+        synchronized (this.writeLock) {
+            int generation = this.journal != null ? this.journal.getGeneration() : this.packGeneration;
+            if (!saveSamplePack(generation) || this.journal == null)
+                return;
 
-        if (DETAILED_LOGGING_ENABLED)
-            for (int i = 0; i < this.size();) {
-                Log.i(LOG_TAG, characters.get(i).getName() + ":" + characters.get(i).getFeatureClass());
-                i += 20;
+            try {
+                this.journal.reset();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Couldn't start the journal over", e);
             }
+        }
+    }
+
+    /**
+     * Make sure that every sample learned so far is on disk (learned samples
+     * are only synced in batches otherwise)
+     */
+    public void syncLearned() {
+        if (this.journal == null)
+            return;
+
+        try {
+            this.journal.sync();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't sync the learned samples", e);
+        }
     }
 
     /**
      * Load all character samples
-     * @return All character samples that exist in the sample pool
+     * @return All character samples that exist in the sample pool ('a' first)
      */
-    public List<Character> getAllCharacterSamples() { return this.characters; }
+    public List<Character> getAllCharacterSamples() {
+        awaitAllLetters();
+        return allCharacters();
+    }
+
+    private List<Character> allCharacters() {
+        List<Character> characters = new ArrayList<>();
+        for (int i = 0; i < this.letters.length(); ++i)
+            characters.addAll(this.letters.get(i).getCharacters());
+        characters.addAll(this.others);
+        return characters;
+    }
 
     /**
      * Load all character samples for a single given character
@@ -243,26 +637,130 @@ public class CharacterBase {
      * @return The sample characters associated with the specified character
      */
     public List<Character> getCharacterSamples(char name) {
-        List<Character> subList = new ArrayList<>();
+        if (name < A_ASCII || name > Z_ASCII)
+            return new ArrayList<>();
 
-        // Create a new list of Characters that only includes
-        // the specified character type
-        for (int i = 0; i < this.size(); ++i) {
-            if (name == this.characters.get(i).getName())
-                subList.add(this.characters.get(i));
-        }
-        return subList;
+        awaitLetter(name - A_ASCII);
+        return new ArrayList<>(this.letters.get(name - A_ASCII).getCharacters());
+    }
+
+    /**
+     * The index of the samples for a single given character, which hands out
+     * the samples of each feature class and ratio class without searching.
+     * Waits for the letter to load, if it hasn't yet, but never locks once it has
+     * @param name The name of the character ('a' - 'z')
+     * @return The samples associated with the specified character (none for
+     *         any other name)
+     */
+    public LetterSamples getSamples(char name) {
+        if (name < A_ASCII || name > Z_ASCII)
+            return new LetterSamples(new ArrayList<Character>());
+
+        awaitLetter(name - A_ASCII);
+        return this.letters.get(name - A_ASCII);
     }
 
     /**
-     * Used to grow our sample pool
+     * The index of every letter's samples, as it stands right now. Waits for
+     * every letter to load, if they haven't yet. A sample learned while this
+     * runs might be in the snapshot or not, but every letter is whole
+     * @return One LetterSamples per letter ('a' first)
+     */
+    public LetterSamples[] getAllSamples() {
+        awaitAllLetters();
+        LetterSamples[] snapshot = new LetterSamples[this.letters.length()];
+        for (int i = 0; i < snapshot.length; ++i)
+            snapshot[i] = this.letters.get(i);
+        return snapshot;
+    }
+
+    /**
+     * Used to grow our sample pool. Every sample carries its template (and
+     * its letter's index carries its descriptor), so that neither has to be
+     * worked out again while identifying
      * @param newCharacter A new character that was correctly identified
      */
-    public void addNewCharacter(Character newCharacter) { this.characters.add(newCharacter); }
+    public void addNewCharacter(Character newCharacter) {
+        if (newCharacter.getTemplate() == null && newCharacter.getImage() != null)
+            newCharacter.setTemplate(new Template(newCharacter.getImage()));
+
+        char name = newCharacter.getName();
+        if (name < A_ASCII || name > Z_ASCII || newCharacter.getTemplate() == null) {
+            synchronized (this.writeLock) {
+                this.others.add(newCharacter);
+                learn(newCharacter);
+            }
+            return;
+        }
+
+        // Rebuild the letter's index rather than change it, so that anyone
+        // still holding on to the old one isn't affected, and publish the new
+        // one in a single write
+        awaitLetter(name - A_ASCII);
+        synchronized (this.writeLock) {
+            List<Character> letter = new ArrayList<>(this.letters.get(name - A_ASCII).getCharacters());
+            letter.add(newCharacter);
+            this.letters.set(name - A_ASCII, new LetterSamples(letter));
+            learn(newCharacter);
+        }
+    }
+
+    // Write a new sample to the journal, so that it's still there next time.
+    // A pack can only be saved once every letter is loaded; until then,
+    // finishLoading() checks the journal's size instead
+    private void learn(Character newCharacter) {
+        if (this.journal == null || newCharacter.getImage() == null)
+            return;
+
+        try {
+            this.journal.append(newCharacter);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't save a learned sample", e);
+            return;
+        }
+
+        if (isWarm() && this.journal.size() >= COMPACT_AFTER)
+            startCompaction();
+    }
+
+    /**
+     * Is every letter loaded yet?
+     * @return Whether the character base is fully warm
+     */
+    public boolean isWarm() { return this.loadNanoseconds > 0; }
+
+    /**
+     * When was the character base created (and its samples started loading)?
+     * Compare with System.nanoTime() to see how long a first result took
+     * @return The time, as given by System.nanoTime()
+     */
+    public long getStartNanoTime() { return this.startNanoTime; }
+
+    /**
+     * How long did every letter take to load (from the assets or a pack),
+     * counting from when the character base was created?
+     * @return The time in nanoseconds (0 if some letters are still loading)
+     */
+    public long getLoadNanoseconds() { return this.loadNanoseconds; }
+
+    /**
+     * How long did one letter's images take to decode and classify, summed
+     * over every thread that worked on them? 0 if the samples came from a pack
+     * @param name The name of the character ('a' - 'z')
+     * @return The time in nanoseconds
+     */
+    public long getLetterLoadNanoseconds(char name) { return this.letterLoadNanoseconds.get(name - A_ASCII); }
+
+    /**
+     * How many threads decoded each letter's images? 0 if the samples came
+     * from a pack
+     * @return The number of threads
+     */
+    public int getLoadThreads() { return this.loadThreads; }
 
     /**
-     * How big is our sample pool?
+     * How big is our sample pool? Waits for every letter to load
      * @return Return the number of samples
      */
-    public int size() { return this.characters.size(); }
+    public int size() { return getAllCharacterSamples().size(); }
 }
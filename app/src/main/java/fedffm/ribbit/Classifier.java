@@ -1,24 +1,168 @@
 package fedffm.ribbit;
 
-import android.graphics.Bitmap;
-import android.graphics.Color;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 public class Classifier {
     private static final String LOG_TAG = "Classifier";
+    private static boolean DETAILED_LOGGING = false;
+
+    // Where a hole sits within a character
+    public  static final int      HOLE_UP        = 0;   // In the top third (a tail below it: g, p, q)
+    public  static final int      HOLE_CENTRE    = 1;
+    public  static final int      HOLE_DOWN      = 2;   // In the bottom third (a stem above it: b, d)
+    private static final String[] HOLE_POSITIONS = {"up", "centre", "down"};
+
+    // The narrowest area of white pixels that counts as enclosed space
+    private static final int MIN_HOLE_WIDTH = 3;
+
+    // What classification has cost, summed over every glyph since resetTiming()
+    private static int  glyphsTimed;
+    private static long sweepNanoseconds;
+    private static long featureNanoseconds;
+    private static long slowestNanoseconds;
+
     /**
-     * Are we in bounds or out of bounds?
-     * @param pixels The map of pixels
-     * @param x The x coordinate
-     * @param y The y coordinate
+     * What the enclosed space of a character looks like: how many holes it
+     * has, and how big the biggest one is and where it sits
      */
-    private static boolean outOfBounds(Map<Integer, List<Integer>> pixels, int x, int y) {
-        return (x >= pixels.get(0).size() - 1 || x <= 0 || y >= pixels.size() - 1 || y <= 0);
+    public static class Holes {
+        private final int count;
+        private final int biggestPixels;
+        private final int biggestPosition;
+        private final int biggestTop;
+
+        // Non-default
+        private Holes(int count, int biggestPixels, int biggestPosition, int biggestTop) {
+            this.count           = count;
+            this.biggestPixels   = biggestPixels;
+            this.biggestPosition = biggestPosition;
+            this.biggestTop      = biggestTop;
+        }
+
+        public int getCount()           {return count;}
+        public int getBiggestPixels()   {return biggestPixels;}
+        public int getBiggestPosition() {return biggestPosition;}
+        public int getBiggestTop()      {return biggestTop;}
+    }
+
+    // A character with no enclosed space
+    private static final Holes NO_HOLES = new Holes(0, 0, -1, -1);
+
+    /**
+     * The pixels of a character, one byte per pixel (1 for black, 0 for white)
+     * in a single flat array, along with everything the feature tests need to
+     * know about its rows and columns. All of it is gathered in one sweep over
+     * the character's words, so no feature has to walk the image again just to
+     * find the edges of its ink
+     */
+    private static class Grid {
+        private int    width;
+        private int    height;
+        private byte[] pixels;
+
+        // Per row: how many black pixels, how many separate runs of black
+        // pixels, and the first and last black columns (width and -1 for an
+        // empty row)
+        private int[]  rowWidths;
+        private int[]  rowRuns;
+        private int[]  leftmost;
+        private int[]  rightmost;
+
+        // Per column: how many times the column goes from white to black on
+        // the way down, and the lowest black row (-1 for an empty column)
+        private int[]  columnCrossings;
+        private int[]  lowest;
+
+        Grid(BinaryImage image) {
+            this.width           = image.getWidth();
+            this.height          = image.getHeight();
+            this.pixels          = new byte[width * height];
+            this.rowWidths       = new int[height];
+            this.rowRuns         = new int[height];
+            this.leftmost        = new int[height];
+            this.rightmost       = new int[height];
+            this.columnCrossings = new int[width];
+            this.lowest          = new int[width];
+
+            Arrays.fill(lowest, -1);
+
+            // The row above, a word at a time
+            long[] above = new long[image.getWordsPerRow()];
+
+            for (int y = 0; y < height; ++y) {
+                leftmost[y]  = width;
+                rightmost[y] = -1;
+                long carry   = 0;
+
+                for (int i = 0; i < image.getWordsPerRow(); ++i) {
+                    long word = image.word(y, i);
+
+                    // A run starts at every black pixel whose left neighbour is white
+                    rowWidths[y] += Long.bitCount(word);
+                    rowRuns[y]   += Long.bitCount(word & ~((word << 1) | carry));
+                    carry         = word >>> 63;
+
+                    if (word != 0) {
+                        if (leftmost[y] == width)
+                            leftmost[y] = (i << 6) + Long.numberOfTrailingZeros(word);
+                        rightmost[y] = (i << 6) + 63 - Long.numberOfLeadingZeros(word);
+                    }
+
+                    // A column crosses into ink wherever a black pixel has a white one above it
+                    long crossings = word & ~above[i];
+                    above[i] = word;
+
+                    while (crossings != 0) {
+                        columnCrossings[(i << 6) + Long.numberOfTrailingZeros(crossings)]++;
+                        crossings &= crossings - 1;
+                    }
+
+                    // Visit each set bit, lowest first
+                    while (word != 0) {
+                        int x = (i << 6) + Long.numberOfTrailingZeros(word);
+                        pixels[y * width + x] = 1;
+                        lowest[x] = y;
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+
+        int getWidth()  {return this.width;}
+        int getHeight() {return this.height;}
+
+        // Reaching past the edge of a row throws, rather than
+        // wrapping around into the next row
+        int get(int x, int y) {
+            if (x < 0 || x >= width || y < 0 || y >= height)
+                throw new IndexOutOfBoundsException("Invalid pixel (" + x + ", " + y + ")");
+            return pixels[y * width + x];
+        }
+
+        int[] getRowWidths()            {return this.rowWidths;}
+        int   getRowRuns(int y)         {return this.rowRuns[y];}
+        int   getLeftmost(int y)        {return this.leftmost[y];}
+        int   getRightmost(int y)       {return this.rightmost[y];}
+        int   getColumnCrossings(int x) {return this.columnCrossings[x];}
+        int   getLowest(int x)          {return this.lowest[x];}
+
+        /**
+         * Could the character enclose any space at all? A hole needs ink on
+         * both sides of it in some row, and above and below it in some column
+         */
+        boolean mayEnclose() {
+            boolean row = false;
+            for (int y = 0; y < height && !row; ++y)
+                row = rowRuns[y] >= 2;
+
+            boolean column = false;
+            for (int x = 0; x < width && !column; ++x)
+                column = columnCrossings[x] >= 2;
+
+            return row && column;
+        }
     }
 
     /**
@@ -28,7 +172,7 @@ public class Classifier {
      *          2: The character is wider than it is tall
      */
     public static void determineRatioClass(Character c) {
-        float ratio  = (float)c.getBitmap().getWidth() / (float)c.getBitmap().getHeight();
+        float ratio  = (float)c.getImage().getWidth() / (float)c.getImage().getHeight();
 
         if (ratio > 0 && ratio < 0.80)         // The height is greater than the width
             c.setRatioClass(0);
@@ -79,90 +223,84 @@ public class Classifier {
      *
      */
     public static void determineFeatureClass(Character character) {
-        // Use this to record how many black pixels are in each row
-        int [] rowWidths  = new int[character.getBitmap().getHeight()];
-
-        // Map all of the pixels
-        Map <Integer, List<Integer>> pixels = new HashMap<>();
-        mapPixels(character.getBitmap(), rowWidths, pixels);
+        // Map all of the pixels, and everything about the rows and columns
+        long timeStart = System.nanoTime();
+        Grid pixels = new Grid(character.getImage());
+        long timeSwept = System.nanoTime();
 
         // Determine which feature class the character falls under
-        boolean disconnect    = isDisconnect(rowWidths);
-        boolean intersect     = isIntersect(rowWidths);
-        boolean openRight     = hasOpenRightSide(pixels);
-        boolean openTop       = hasOpenTop(pixels);
-        boolean openBottom    = hasOpenBottom(pixels);
-        int     enclosedSpace = hasEnclosedSpace(character.getBitmap(), pixels);
-        boolean isLine        = isLine(pixels);
-
-        // Assign feature class accordingly
-        if (disconnect)                          // Disconnect
-            character.setFeatureClass(1);
-        else if (intersect)                      // Intersect
-            character.setFeatureClass(2);
-        else if (openRight)                      // Open right
-            character.setFeatureClass(3);
-        else if (openTop)                        // Open top
-            character.setFeatureClass(4);
-        else if (openBottom)                     // Open bottom
-            character.setFeatureClass(5);
-        else if (enclosedSpace == 6)             // Enclosed normal
-            character.setFeatureClass(6);
-        else if (enclosedSpace == 7)             // Enclosed pointing up
-            character.setFeatureClass(7);
-        else if (enclosedSpace == 8)             // Enclosed pointing down
-            character.setFeatureClass(8);
-        else if (enclosedSpace == 9)             // g
-            character.setFeatureClass(9);
-        else if (enclosedSpace == 10)            // p
-            character.setFeatureClass(10);
-        else if (enclosedSpace == 11)            // q
-            character.setFeatureClass(11);
-        else if (isLine)                         // Line
-            character.setFeatureClass(12);
-        else
-            character.setFeatureClass(0);        // Default
+        int featureClass = featureClass(character.getImage(), pixels);
+        character.setFeatureClass(featureClass);
+        long timeEnd = System.nanoTime();
+
+        recordTiming(timeSwept - timeStart, timeEnd - timeSwept);
+        if (DETAILED_LOGGING)
+            Log.i(LOG_TAG, pixels.getWidth() + "x" + pixels.getHeight() + " glyph: feature class " + featureClass +
+                           ", sweep " + (timeSwept - timeStart) / 1000 + "us, features " + (timeEnd - timeSwept) / 1000 + "us");
     }
 
     /**
-     * Get the information for the number of pixels
-     * in each row
-     * @param bitmap The bitmap of the character
-     * @param rowWidths The width (in black pixels) of each row of the character
-     * @param pixels A map of each row and the pixels contained in each row
+     * Try each feature in order of priority. The first one that the character
+     * has decides its class, and none of the features after it are looked at
+     * @param image The character's image
+     * @param pixels The character's pixels
+     * @return The feature class (see determineFeatureClass())
      */
-    private static void mapPixels(Bitmap bitmap, int[] rowWidths, Map<Integer, List<Integer>> pixels) {
-        for (int y = 0; y < bitmap.getHeight(); ++y) {
-            int numBlackPixelsInRow = 0;
-            List<Integer> xCoordinates = new ArrayList<>();
-
-            // Iterate across the row from left to right
-            for (int x = 0; x < bitmap.getWidth(); ++x) {
-                boolean pixelIsBlack = bitmap.getPixel(x, y) < Color.rgb(25, 25, 25);
-                if (pixelIsBlack) {
-                    numBlackPixelsInRow++;
-                    xCoordinates.add(1);
-                }
-                else {
-                    xCoordinates.add(0);
-                }
-            }
-            // Store how wide each row is in an array
-            rowWidths[y] = numBlackPixelsInRow;
-            pixels.put(y, xCoordinates);
-        }
+    private static int featureClass(BinaryImage image, Grid pixels) {
+        if (isDisconnect(pixels.getRowWidths()))         // Disconnect
+            return 1;
+        if (isIntersect(pixels.getRowWidths()))          // Intersect
+            return 2;
+        if (hasOpenRightSide(pixels))                    // Open right
+            return 3;
+        if (hasOpenTop(pixels))                          // Open top
+            return 4;
+        if (hasOpenBottom(pixels))                       // Open bottom
+            return 5;
+
+        // Enclosed normal (6), pointing up (7), pointing down (8), g (9), p (10) or q (11)
+        int enclosedSpace = hasEnclosedSpace(image, pixels);
+        if (enclosedSpace != -1)
+            return enclosedSpace;
+
+        if (isLine(pixels))                              // Line
+            return 12;
+        return 0;                                        // Default
+    }
+
+    private static synchronized void recordTiming(long sweep, long features) {
+        glyphsTimed++;
+        sweepNanoseconds   += sweep;
+        featureNanoseconds += features;
+        slowestNanoseconds  = Math.max(slowestNanoseconds, sweep + features);
+    }
+
+    /**
+     * Forget the classification times gathered so far
+     */
+    public static synchronized void resetTiming() {
+        glyphsTimed        = 0;
+        sweepNanoseconds   = 0;
+        featureNanoseconds = 0;
+        slowestNanoseconds = 0;
     }
 
+    // What classification has cost since the last resetTiming()
+    public static synchronized int  getGlyphsTimed()        {return glyphsTimed;}
+    public static synchronized long getSweepNanoseconds()   {return sweepNanoseconds;}
+    public static synchronized long getFeatureNanoseconds() {return featureNanoseconds;}
+    public static synchronized long getSlowestNanoseconds() {return slowestNanoseconds;}
+
     /**
      * Output an ASCII map of the character's pixels
-     * @param pixels Each entry represents a row of black and white pixels
+     * @param pixels The black and white pixels
      */
-    private static void display(Map<Integer, List<Integer>> pixels) {
-        for (int i = 0; i < pixels.size(); ++i) {
+    private static void display(Grid pixels) {
+        for (int i = 0; i < pixels.getHeight(); ++i) {
             // Append each pixel value to a string (to represent a row of pixels)
             String row = "";
-            for (int j = 0; j < pixels.get(i).size(); ++j) {
-                row += pixels.get(i).get(j);
+            for (int j = 0; j < pixels.getWidth(); ++j) {
+                row += pixels.get(j, i);
             }
 
             // Handle single/double digit display for cleaner output
@@ -194,179 +332,84 @@ public class Classifier {
      *                 BlACK PIXELS --> WHITE PIXELS --> BLACK PIXELS
      *                     BLACK PIXELS BLACK PIXELS BLACK PIXELS
      *
-     * @return True if the character contains enclosed whitespace
+     * The white pixels are labelled as connected components in a single pass:
+     * any component that doesn't reach the edge of the image is a hole. The
+     * biggest hole then decides whether the character has a stem pointing up
+     * or a tail pointing down
+     *
+     * @return 6 - 11 if the character contains enclosed whitespace (see
+     *         determineFeatureClass()), otherwise -1
      */
-    private static int hasEnclosedSpace(Bitmap bitmap, Map<Integer, List<Integer>> pixels) {
-        // The outer-most loop is to help us find our starting point
-        for (int y = 0; y < pixels.size(); ++y) {
-            for (int x = 0; x < pixels.get(0).size(); ++x) {
-
-                // White pixel with a black pixel above (three in a row)
-                if (y < 1 || x  >= pixels.get(0).size() - 2)
-                    break;
-
-                // Begin examination when we encounter several white pixels
-                // in a row that have black pixels above them
-                if (pixels.get(y).get(x)         == 0 && pixels.get(y - 1).get(x)     == 1 &&
-                        pixels.get(y).get(x + 1) == 0 && pixels.get(y - 1).get(x + 1) == 1 &&
-                        pixels.get(y).get(x + 2) == 0 && pixels.get(y - 1).get(x + 2) == 1) {
-
-                    // Use this list of coordinates to keep track of our position in the bitmap
-                    List<String> coordinates = new ArrayList<>();
-
-                    // Iterate to the right as far as we can
-                    //                 .
-                    //.................;;.
-                    //::::::::::::::::;;;;.
-                    //::::::::::::::::::;;:'
-                    //                 :'
-                    //
-                    while (x < pixels.get(0).size() - 1  && y < pixels.size() - 1  && pixels.get(y).get(x) == 0) {
-
-                        // Move down if need be
-                        while (pixels.get(y).get(x) == 0 && pixels.get(y).get(x + 1) == 1 && y < pixels.size() - 1) {
-                            coordinates.add(x + ":" + y);
-                            y++;
-
-                            if (outOfBounds(pixels, x, y))
-                                return -1;
-                        }
-
-                        // Move to the right
-                        coordinates.add(x + ":" + y);
-                        x++;
-                        if (outOfBounds(pixels, x, y))
-                            return -1;
-
-                        // Prepare for the next loop
-                        if (pixels.get(y).get(x) == 1) {
-                            x--;
-                            pixels.get(y).set(x, 0);
-                            break;
-                        }
-                    }
-
-                    // Iterate down as far as we can
-                    //   ;;;;;
-                    //   ;;;;;
-                    //   ;;;;;
-                    //   ;;;;;
-                    //   ;;;;;
-                    // ..;;;;;..
-                    //  ':::::'
-                    //    ':`
-                    //
-                    while (x > 0  && y < pixels.size() - 1  && pixels.get(y).get(x) == 0) {
-
-                        // Move to the left if need be
-                        while (pixels.get(y).get(x) == 0 && pixels.get(y + 1).get(x) == 1 && x > 0) {
-                            coordinates.add(x + ":" + y);
-                            x--;
-
-                            if (outOfBounds(pixels, x, y))
-                                return -1;
-                        }
-
-                        // Move down
-                        coordinates.add(x + ":" + y);
-                        y++;
+    private static int hasEnclosedSpace(BinaryImage image, Grid pixels) {
+        // Don't bother labelling a character that can't have a hole
+        if (!pixels.mayEnclose())
+            return -1;
 
-                        if (outOfBounds(pixels, x, y))
-                            return -1;
+        Holes holes = findHoles(image);
+        if (holes.getCount() == 0)
+            return -1;
 
-                        // Prepare for the next loop
-                        if (pixels.get(y).get(x) == 1) {
-                            y--;
-                            pixels.get(y).set(x, 0);
-                            break;
-                        }
-                    }
+        // The row where the enclosed space begins
+        int startingPoint = holes.getBiggestTop();
 
-                    // Iterate left as far as we can
-                    //     .
-                    //   .;;..................
-                    // .;;;;::::::::::::::::::
-                    //  ':;;::::::::::::::::::
-                    //    ':
-                    //
-                    while (x > 0  && y > 0 && pixels.get(y).get(x) == 0) {
-
-                        // Move up if need be
-                        while (pixels.get(y).get(x) == 0 && pixels.get(y).get(x - 1) == 1 && y > 0) {
-                            coordinates.add(x + ":" + y);
-                            y--;
-
-                            if (outOfBounds(pixels, x, y))
-                                return -1;
-                        }
+        if (isPointingUp(pixels, startingPoint))
+            return 7;
+        else if (isPointingDown(image, pixels, startingPoint) != -1)
+            return isPointingDown(image, pixels, startingPoint);
 
-                        // Move to the left
-                        coordinates.add(x + ":" + y);
-                        x--;
+        return 6;
+    }
 
-                        if (outOfBounds(pixels, x, y))
-                            return -1;
+    /**
+     * Find the holes of a character: the areas of white pixels that don't
+     * reach the edge of its image
+     * @param image The character's image
+     * @return How many holes there are, and the size, position (HOLE_UP,
+     *         HOLE_CENTRE or HOLE_DOWN) and first row of the biggest one
+     */
+    public static Holes findHoles(BinaryImage image) {
+        ConnectedComponents background = new ConnectedComponents(image, true);
 
-                        // Prepare for the next loop
-                        if (pixels.get(y).get(x) == 1) {
-                            x++;
-                            pixels.get(y).set(x, 0);
-                            break;
-                        }
-                    }
+        int holes   = 0;
+        int biggest = -1;
 
-                    // Iterate up as far as we can
-                    //      .
-                    //    .:;:.
-                    //  .:;;;;;:.
-                    //    ;;;;;
-                    //    ;;;;;
-                    //    ;;;;;
-                    //    ;;;;;
-                    //    ;;;;;
-                    //
-                    while (x < pixels.get(0).size() && y > 0 && pixels.get(y).get(x) == 0) {
-
-                        // Move to the right if need be
-                        while (pixels.get(y).get(x) == 0 && pixels.get(y - 1).get(x) == 1 && x < pixels.get(0).size() - 1) {
-
-                            if (coordinates.contains(x + ":" + y)) {
-                                if (isPointingUp(pixels, y))
-                                    return 7;
-                                else if (isPointingDown(bitmap, pixels, y) != -1)
-                                    return isPointingDown(bitmap, pixels, y);
-
-                                return 6;
-                            }
-                            x++;
-                            coordinates.add(x + ":" + y);
-
-
-                            if (outOfBounds(pixels, x, y))
-                                return -1;
-                        }
+        for (int i = 0; i < background.getCount(); ++i) {
+            // Holes narrower than a few pixels are specks in the ink, not
+            // enclosed space
+            if (background.touchesEdge(i) || background.getMaxX(i) - background.getMinX(i) + 1 < MIN_HOLE_WIDTH)
+                continue;
 
-                        // Move up
-                        if (coordinates.contains(x + ":" + y)) {
-                            if (isPointingUp(pixels, y))
-                                return 7;
-                            else if (isPointingDown(bitmap, pixels, y) != -1)
-                                return isPointingDown(bitmap, pixels, y);
+            holes++;
+            if (biggest < 0 || background.getPixels(i) > background.getPixels(biggest))
+                biggest = i;
 
-                            return 6;
-                        }
-                        y--;
-                        coordinates.add(x + ":" + y);
+            if (DETAILED_LOGGING)
+                Log.i(LOG_TAG, "Hole " + holes + ": " + background.getPixels(i) + " pixels, " +
+                               HOLE_POSITIONS[holePosition(background, i, image.getHeight())]);
+        }
 
+        if (biggest < 0)
+            return NO_HOLES;
 
-                        if (outOfBounds(pixels, x, y))
-                            return -1;
-                    }
-                }
-            }
-        }
+        return new Holes(holes, background.getPixels(biggest), holePosition(background, biggest, image.getHeight()),
+                         background.getMinY(biggest));
+    }
 
-        return -1;
+    /**
+     * Where does a hole sit within the character?
+     * @param background The white components of the character
+     * @param hole The hole
+     * @param height The height of the character
+     * @return HOLE_UP, HOLE_CENTRE or HOLE_DOWN
+     */
+    private static int holePosition(ConnectedComponents background, int hole, int height) {
+        float centre = background.getCentroidY(hole) / height;
+
+        if (centre < 1.0f / 3.0f)
+            return HOLE_UP;
+        else if (centre > 2.0f / 3.0f)
+            return HOLE_DOWN;
+        return HOLE_CENTRE;
     }
 
     /**
@@ -377,27 +420,19 @@ public class Classifier {
      * @param pixels A map of the pixels
      * @return True if the character has a stem that points upward
      */
-    private static boolean isPointingUp(Map<Integer, List<Integer>> pixels, int startingPoint) {
+    private static boolean isPointingUp(Grid pixels, int startingPoint) {
         boolean leftSkewed = true;
         boolean rightSkewed = true;
 
-        for (int y = 0; y < startingPoint; ++y) {
-            for (int x = 0; x < pixels.get(y).size(); ++x) {
-                // First fifth rows
-                if (y <= (int)(pixels.get(y).size() / 5.0f)) {
+        // First fifth rows
+        for (int y = 0; y < startingPoint && y <= (int)(pixels.getWidth() / 5.0f); ++y) {
+            // Any black pixel in the last two-thirds of the columns
+            if (pixels.getRightmost(y) >= pixels.getWidth() / 3)
+                leftSkewed = false;
 
-                    // Last two-third columns
-                    if (x >= pixels.get(y).size() / 3) {
-                        if (pixels.get(y).get(x) == 1)
-                            leftSkewed = false;
-                    }
-                    // First two-third columns
-                    else if (x <= (int)(pixels.get(y).size() * (2.0f/3.0f))) {
-                        if (pixels.get(y).get(x) == 1)
-                            rightSkewed = false;
-                    }
-                }
-            }
+            // Any black pixel in the first third of the columns
+            if (pixels.getLeftmost(y) < pixels.getWidth() / 3)
+                rightSkewed = false;
         }
         // Characters should only have pixels on one side of the bitmap
         return ((leftSkewed && !rightSkewed) || (!leftSkewed && rightSkewed));
@@ -412,60 +447,50 @@ public class Classifier {
      * @param pixels A map of the pixels
      * @return True if the character has a stem that points downward
      */
-    private static int isPointingDown(Bitmap bitmap, Map<Integer, List<Integer>> pixels, int startingPoint) {
+    private static int isPointingDown(BinaryImage image, Grid pixels, int startingPoint) {
 
         // Rule out any characters that are too average or wide
         // as well as any characters where the area of enclosed
         // space begins too far down the bitmap
-        if (bitmap.getHeight() <= bitmap.getWidth() || startingPoint >= (int)(pixels.size() / 1.75f))
+        if (image.getHeight() <= image.getWidth() || startingPoint >= (int)(pixels.getHeight() / 1.75f))
             return -1;
 
         // Examine the row that is 2/3 of the way down the bitmap
         // Find the pixel that is furthest to the right
-        int rightmostPixel = pixels.get(0).size();
-        for (int x = pixels.get(0).size() -1; x >= 0; --x) {
-            if (pixels.get((int)(pixels.size() * (2.0f/3.0f))).get(x) == 1) {
-                rightmostPixel = x;
-                break;
-            }
-        }
+        int rightmostPixel = pixels.getRightmost((int)(pixels.getHeight() * (2.0f/3.0f)));
+        if (rightmostPixel < 0)
+            rightmostPixel = pixels.getWidth();
 
         // Examine the last column and find the pixel that is
         // closest to the bottom of the bitmap
-        int lowestPixelRightEdge = 0;
-        for (int y = 0; y < pixels.size(); ++y) {
-            if (pixels.get(y).get(pixels.get(0).size() - 1) == 1)
-                if (y > lowestPixelRightEdge)
-                    lowestPixelRightEdge = y;
-        }
-
+        int lowestPixelRightEdge = Math.max(0, pixels.getLowest(pixels.getWidth() - 1));
 
 
         // Rule out characters where the rightmost pixel is
         // too close to the left edge of the bitmap
         // (this is in order to get rid of the letter 'e')
-        if (rightmostPixel <= pixels.get(0).size() / 6) {
+        if (rightmostPixel <= pixels.getWidth() / 6) {
             return -1;
         }
 
 
         // If the rightmost pixel is close to the right edge of the bitmap
         // then the character is probably the letter 'g'
-        else if (rightmostPixel >= (int)(pixels.get(0).size() * (3.0f/4.0f))) {
+        else if (rightmostPixel >= (int)(pixels.getWidth() * (3.0f/4.0f))) {
             return 9;  // g
         }
 
         // If the lowest pixel in the very last column is
         // more than halfway down the bitmap, then the character
         // is probably the letter 'q' (because of the tail)
-        else if (lowestPixelRightEdge >= pixels.size() / 2) {
+        else if (lowestPixelRightEdge >= pixels.getHeight() / 2) {
             return 11;  // q
         }
 
         // Otherwise, if the lowest pixel in the last column
         // is relatively higher up in the bitmap, the letter
         // is probably a 'p'
-        else if (lowestPixelRightEdge <= pixels.size() / 2) {
+        else if (lowestPixelRightEdge <= pixels.getHeight() / 2) {
             return 10;  // p
         }
 
@@ -548,12 +573,13 @@ public class Classifier {
      *      3. w
      *      4. y
      *
-     * @param pixels Each entry represents a row of black and white pixels
+     * @param pixels The black and white pixels
      * @return True if the character has an open top
      */
-    private static boolean hasOpenTop(Map<Integer, List<Integer>> pixels) {
-        List<Integer> xCoordinates = new ArrayList<>();
-        List<Integer> yCoordinates = new ArrayList<>();
+    private static boolean hasOpenTop(Grid pixels) {
+        // Where the marker last ran into a black pixel (-1: it never did)
+        int xPosition = -1;
+        int yPosition = -1;
         int topLeftBlackPixelX  = 0;
         int topLeftBlackPixelY  = 0;
         int topRightBlackPixelX = 0;
@@ -561,10 +587,10 @@ public class Classifier {
         boolean startingPointReached = false;
 
         // Each iteration is a row in the bitmap
-        for (int y = 0; y < pixels.size(); ++y) {
+        for (int y = 0; y < pixels.getHeight(); ++y) {
 
             // Each iteration is a pixel in the current row
-            for (int x = 0; x < pixels.get(y).size(); ++x) {
+            for (int x = 0; x < pixels.getWidth(); ++x) {
                 boolean topLeftPixelSet  = !(topLeftBlackPixelX  == 0 && topLeftBlackPixelY  == 0);
                 boolean topRightPixelSet = !(topRightBlackPixelX == 0 && topRightBlackPixelY == 0);
 
@@ -572,14 +598,14 @@ public class Classifier {
                 // Find the top-left black pixel
                 //
                 ////////////////////////////////////////////////////////////////////////////////////
-                if (!topLeftPixelSet && pixels.get(y).get(x) == 1 && x <= pixels.get(y).size()/3) {
+                if (!topLeftPixelSet && pixels.get(x, y) == 1 && x <= pixels.getWidth()/3) {
                     topLeftBlackPixelX = x;
                     topLeftBlackPixelY = y;
                 }
 
                 // Record our starting point
-                if (x <= pixels.get(y).size()/2 && topLeftPixelSet && !startingPointReached &&
-                        pixels.get(y).get(x) == 1 && pixels.get(y).get(x + 1) == 0 && pixels.get(y).get(x + 2) == 0) {
+                if (x <= pixels.getWidth()/2 && topLeftPixelSet && !startingPointReached &&
+                        pixels.get(x, y) == 1 && pixels.get(x + 1, y) == 0 && pixels.get(x + 2, y) == 0) {
                     startingPointReached = true;
                 }
 
@@ -587,18 +613,18 @@ public class Classifier {
                 //                                                    Find the top-right black pixel
                 //
                 ////////////////////////////////////////////////////////////////////////////////////
-                if (!topRightPixelSet && x >= pixels.get(y).size()/2) {
+                if (!topRightPixelSet && x >= pixels.getWidth()/2) {
                     // Only evaluate black pixels
-                    if (pixels.get(y).get(x) == 1) {
+                    if (pixels.get(x, y) == 1) {
                         // If the black pixel is at the very edge of the bitmap,
                         // it qualifies as the top-right pixel
-                        if ((x == pixels.get(y).size() - 1)) {
+                        if ((x == pixels.getWidth() - 1)) {
                             topRightBlackPixelX = x;
                             topRightBlackPixelY = y;
                         }
                         // If it is the last black pixel in the row, it also
                         // qualifies as the top-right pixel
-                        else if (pixels.get(y).get(x + 1) == 0) {
+                        else if (pixels.get(x + 1, y) == 0) {
                             topRightBlackPixelX = x;
                             topRightBlackPixelY = y;
                         }
@@ -613,18 +639,18 @@ public class Classifier {
 
                 // Ensure the top-left-most and top-right-most pixels of the character are not
                 // wide enough apart, return false
-                float margin = pixels.get(y).size() / 4.25f;
-                if (topLeftBlackPixelX >= margin || topRightBlackPixelX <= pixels.get(y).size() - margin)
+                float margin = pixels.getWidth() / 4.25f;
+                if (topLeftBlackPixelX >= margin || topRightBlackPixelX <= pixels.getWidth() - margin)
                     return false;
 
                 // As long as the current pixel is white, move down
-                while (y < pixels.size() - 1 && x < pixels.get(y).size() - 1 && pixels.get(y).get(x) == 0) {
+                while (y < pixels.getHeight() - 1 && x < pixels.getWidth() - 1 && pixels.get(x, y) == 0) {
                     y++;
 
                     // If we run into a black pixel, move to the right
-                    if (pixels.get(y).get(x) == 1) {
-                        xCoordinates.add(x);
-                        yCoordinates.add(y);
+                    if (pixels.get(x, y) == 1) {
+                        xPosition = x;
+                        yPosition = y;
                         x++;
                     }
                 }
@@ -632,16 +658,14 @@ public class Classifier {
         }
 
         // Find where our marker left off
-        if (!xCoordinates.isEmpty() && !yCoordinates.isEmpty()) {
-            int xPosition = xCoordinates.get(xCoordinates.size() - 1);
-            int yPosition = yCoordinates.get(yCoordinates.size() - 1);
+        if (xPosition >= 0) {
 
             if (xPosition < topLeftBlackPixelX || xPosition > topRightBlackPixelX)
                 return false;
 
             // Attempt to find a clean route back up to the top of the bitmap
             for (int i = yPosition - 1; i >= 0; i--)
-                if (pixels.get(i).get(xPosition) == 1)
+                if (pixels.get(xPosition, i) == 1)
                     return false;
         }
         else
@@ -657,12 +681,13 @@ public class Classifier {
      *      2. h
      *      3. m
      *
-     * @param pixels Each entry represents a row of black and white pixels
+     * @param pixels The black and white pixels
      * @return True if the character has an open top
      */
-    private static boolean hasOpenBottom(Map<Integer, List<Integer>> pixels) {
-        List<Integer> xCoordinates = new ArrayList<>();
-        List<Integer> yCoordinates = new ArrayList<>();
+    private static boolean hasOpenBottom(Grid pixels) {
+        // Where the marker last ran into a black pixel (-1: it never did)
+        int xPosition = -1;
+        int yPosition = -1;
         int bottomLeftBlackPixelX  = 0;
         int bottomLeftBlackPixelY  = 0;
         int bottomRightBlackPixelX = 0;
@@ -670,10 +695,10 @@ public class Classifier {
         boolean startingPointReached = false;
 
         // Each iteration is a row in the bitmap
-        for (int y = pixels.size() - 1; y >= 0; --y) {
+        for (int y = pixels.getHeight() - 1; y >= 0; --y) {
 
             // Each iteration is a pixel in the current row
-            for (int x = 0; x < pixels.get(y).size(); ++x) {
+            for (int x = 0; x < pixels.getWidth(); ++x) {
                 boolean bottomLeftPixelSet  = !(bottomLeftBlackPixelX  == 0 && bottomLeftBlackPixelY  == 0);
                 boolean bottomRightPixelSet = !(bottomRightBlackPixelX == 0 && bottomRightBlackPixelY == 0);
 
@@ -681,14 +706,14 @@ public class Classifier {
                 //
                 // Find the bottom-left black pixel
                 ////////////////////////////////////////////////////////////////////////////////////
-                if (!bottomLeftPixelSet && pixels.get(y).get(x) == 1 && x <= pixels.get(y).size()/3) {
+                if (!bottomLeftPixelSet && pixels.get(x, y) == 1 && x <= pixels.getWidth()/3) {
                     bottomLeftBlackPixelX = x;
                     bottomLeftBlackPixelY = y;
                 }
 
                 // Record our starting point
-                if (x <= pixels.get(y).size()/2 && bottomLeftPixelSet && !startingPointReached &&
-                        pixels.get(y).get(x) == 1 && pixels.get(y).get(x + 1) == 0 && pixels.get(y).get(x + 2) == 0) {
+                if (x <= pixels.getWidth()/2 && bottomLeftPixelSet && !startingPointReached &&
+                        pixels.get(x, y) == 1 && pixels.get(x + 1, y) == 0 && pixels.get(x + 2, y) == 0) {
                     startingPointReached = true;
                 }
 
@@ -696,18 +721,18 @@ public class Classifier {
                 //
                 //                                                 Find the bottom-right black pixel
                 ////////////////////////////////////////////////////////////////////////////////////
-                if (!bottomRightPixelSet && x >= pixels.get(y).size()/2) {
+                if (!bottomRightPixelSet && x >= pixels.getWidth()/2) {
                     // Only evaluate black pixels
-                    if (pixels.get(y).get(x) == 1) {
+                    if (pixels.get(x, y) == 1) {
                         // If the black pixel is at the very edge of the bitmap,
                         // it qualifies as the top-right pixel
-                        if ((x == pixels.get(y).size() - 1)) {
+                        if ((x == pixels.getWidth() - 1)) {
                             bottomRightBlackPixelX = x;
                             bottomRightBlackPixelY = y;
                         }
                         // If it is the last black pixel in the row, it also
                         // qualifies as the top-right pixel
-                        else if (pixels.get(y).get(x + 1) == 0) {
+                        else if (pixels.get(x + 1, y) == 0) {
                             bottomRightBlackPixelX = x;
                             bottomRightBlackPixelY = y;
                         }
@@ -722,18 +747,18 @@ public class Classifier {
 
                 // Ensure the top-left-most and top-right-most pixels of the character are not
                 // wide enough apart, return false
-                float margin = pixels.get(y).size() / 3.0f;
-                if (bottomLeftBlackPixelX >= margin || bottomRightBlackPixelX <= pixels.get(y).size() - margin)
+                float margin = pixels.getWidth() / 3.0f;
+                if (bottomLeftBlackPixelX >= margin || bottomRightBlackPixelX <= pixels.getWidth() - margin)
                     return false;
 
                 // As long as the current pixel is white, move up
-                while (y > 0 && x < pixels.get(y).size() - 1 && pixels.get(y).get(x) == 0) {
+                while (y > 0 && x < pixels.getWidth() - 1 && pixels.get(x, y) == 0) {
                     y--;
 
                     // If we run into a black pixel, move to the right
-                    if (pixels.get(y).get(x) == 1) {
-                        xCoordinates.add(x);
-                        yCoordinates.add(y);
+                    if (pixels.get(x, y) == 1) {
+                        xPosition = x;
+                        yPosition = y;
                         x++;
                     }
                 }
@@ -741,21 +766,19 @@ public class Classifier {
         }
 
         // Find where our marker left off
-        if (!xCoordinates.isEmpty() && !yCoordinates.isEmpty()) {
-            int xPosition = xCoordinates.get(xCoordinates.size() - 1);
-            int yPosition = yCoordinates.get(yCoordinates.size() - 1);
+        if (xPosition >= 0) {
 
             if (xPosition < bottomLeftBlackPixelX || xPosition > bottomRightBlackPixelX)
                 return false;
 
             // In order to be considered an "open-bottom" character, the character
             // must exhibit adequate depth
-            if (yPosition >= pixels.size() / 2)
+            if (yPosition >= pixels.getHeight() / 2)
                 return false;
 
             // Attempt to find a clean route back down to the bottom of the bitmap
-            for (int i = yPosition + 1; i < pixels.size(); ++i) {
-                if (pixels.get(i).get(xPosition) == 1)
+            for (int i = yPosition + 1; i < pixels.getHeight(); ++i) {
+                if (pixels.get(xPosition, i) == 1)
                     return false;
             }
         }
@@ -771,13 +794,13 @@ public class Classifier {
      *      1. c
      *      2. r
      *
-     * @param pixels Each entry represents a row of black and white pixels
+     * @param pixels The black and white pixels
      * @return True if the character is "open" at the right side
      */
-    private static boolean hasOpenRightSide(Map<Integer, List<Integer>> pixels) {
+    private static boolean hasOpenRightSide(Grid pixels) {
 
         // The index of the right-most edge of the bitmap
-        int lastColumnIndex = pixels.get(0).size() - 1;
+        int lastColumnIndex = pixels.getWidth() - 1;
 
         // Until proven otherwise, assume that each section
         // only has pixels at the left of the bitmap
@@ -785,29 +808,20 @@ public class Classifier {
         boolean middleIsLeftSkewed     = true;
         boolean lowerThirdIsLeftSkewed = true;
 
-        // Starting at the right-most edge of the bitmap,
-        // iterate until we reach the left-most edge
-        for (int i = lastColumnIndex; i >= 0; --i) {
-
-            // Detect black pixels close to the right edge
-            // of the upper-third section of the bitmap
-            if (pixels.get(pixels.size() / 3).get(i) == 1)
-                if (i >= lastColumnIndex / 1.9f)
-                    upperThirdIsLeftSkewed = false;
+        // Detect black pixels close to the right edge
+        // of the upper-third section of the bitmap
+        if (pixels.getRightmost(pixels.getHeight() / 3) >= lastColumnIndex / 1.9f)
+            upperThirdIsLeftSkewed = false;
 
-            // Detect black pixels close to the right edge
-            // of the middle section of the bitmap
-            if (pixels.get(pixels.size() / 2).get(i) == 1)
-                if (i >= lastColumnIndex / 1.9f)
-                    middleIsLeftSkewed = false;
+        // Detect black pixels close to the right edge
+        // of the middle section of the bitmap
+        if (pixels.getRightmost(pixels.getHeight() / 2) >= lastColumnIndex / 1.9f)
+            middleIsLeftSkewed = false;
 
-            // Detect black pixels close to the right edge
-            // of the lower-third section of the bitmap
-            if (pixels.get((int)(pixels.size() * (2.0f/3.0f))).get(i) == 1)
-                if (i >= lastColumnIndex / 1.9f)
-                    lowerThirdIsLeftSkewed = false;
-
-        }
+        // Detect black pixels close to the right edge
+        // of the lower-third section of the bitmap
+        if (pixels.getRightmost((int)(pixels.getHeight() * (2.0f/3.0f))) >= lastColumnIndex / 1.9f)
+            lowerThirdIsLeftSkewed = false;
 
         return !(!upperThirdIsLeftSkewed || !middleIsLeftSkewed || !lowerThirdIsLeftSkewed);
     }
@@ -820,16 +834,12 @@ public class Classifier {
      * @param pixels A map of the bitmap's pixels
      * @return True if the character is a line
      */
-    private static boolean isLine(Map<Integer, List<Integer>> pixels) {
-        for (int y = 0; y < pixels.size(); ++y) {
-            int blackSpaceCount = 0;
-
-            for (int x = 0; x < pixels.get(0).size() - 1; ++x) {
-                // If we transition from black to white, it is considered
-                // one new section of black pixels
-                if (pixels.get(y).get(x) == 1 && pixels.get(y).get(x + 1) == 0)
-                    blackSpaceCount++;
-            }
+    private static boolean isLine(Grid pixels) {
+        for (int y = 0; y < pixels.getHeight(); ++y) {
+            // Every run of black pixels that ends before the last column
+            // (where it transitions from black to white) is considered one
+            // section of black pixels
+            int blackSpaceCount = pixels.getRowRuns(y) - pixels.get(pixels.getWidth() - 1, y);
 
             // If there are multiple sections of black pixels in a row,
             // (such as with the letter 'o'), then the character cannot be
@@ -0,0 +1,239 @@
+package fedffm.ribbit;
+
+/**
+ * Label the connected groups of black pixels in a binary image (pixels touching
+ * horizontally, vertically or diagonally belong to the same group), or the
+ * connected groups of white pixels (which only connect horizontally and
+ * vertically, so that a diagonal stroke of black pixels keeps them apart).
+ *
+ * The classic two-pass algorithm: the first pass hands out provisional labels
+ * and records which labels touch in a union-find array, the second pass
+ * resolves every pixel to its final label and gathers the bounding box, pixel
+ * count and centroid of every component at the same time. Everything lives in
+ * primitive arrays, and both passes are linear in the size of the image
+ */
+public class ConnectedComponents {
+    private int   width;
+    private int   height;
+    private int   count;
+    private int[] labels;
+
+    // Statistics for each component (indexed by final label - 1)
+    private int[]  minX;
+    private int[]  minY;
+    private int[]  maxX;
+    private int[]  maxY;
+    private int[]  pixels;
+    private long[] sumX;
+    private long[] sumY;
+
+    // Non-default
+    public ConnectedComponents(BinaryImage image) {
+        this(image, false);
+    }
+
+    /**
+     * Label the image
+     * @param image The image
+     * @param background true to label the white pixels instead of the black ones
+     */
+    public ConnectedComponents(BinaryImage image, boolean background) {
+        this.width  = image.getWidth();
+        this.height = image.getHeight();
+        this.labels = new int[width * height];
+
+        // Provisional labels start at 1 (0 is an unlabelled pixel); parent[label] is
+        // the label it has been merged into. The worst case (a checkerboard)
+        // needs a new label for every other pixel
+        int[] parent = new int[(width * height) / 2 + 2];
+        int next = 1;
+
+        //******************************************************************************************
+        // FIRST PASS: provisional labels
+        //    Each pixel looks at the neighbours that have already been visited
+        //    (west, north-west, north, north-east; only west and north for the
+        //    background) and takes the smallest of their labels, recording
+        //    that all of those labels are equivalent
+        //******************************************************************************************
+        for (int y = 0; y < height; ++y) {
+            long word = 0;
+
+            for (int x = 0; x < width; ++x) {
+                if ((x & 63) == 0)
+                    word = background ? ~image.word(y, x >>> 6) : image.word(y, x >>> 6);
+                if ((word & (1L << x)) == 0)
+                    continue;
+
+                int west      = x > 0                                 ? labels[y * width + x - 1]       : 0;
+                int northWest = x > 0 && y > 0 && !background         ? labels[(y - 1) * width + x - 1] : 0;
+                int north     = y > 0                                 ? labels[(y - 1) * width + x]     : 0;
+                int northEast = x < width - 1 && y > 0 && !background ? labels[(y - 1) * width + x + 1] : 0;
+
+                int label = 0;
+                label = smallest(label, west);
+                label = smallest(label, northWest);
+                label = smallest(label, north);
+                label = smallest(label, northEast);
+
+                // No labelled neighbours: start a new component
+                if (label == 0) {
+                    label = next++;
+                    parent[label] = label;
+                }
+                else {
+                    union(parent, label, west);
+                    union(parent, label, northWest);
+                    union(parent, label, north);
+                    union(parent, label, northEast);
+                }
+
+                labels[y * width + x] = label;
+            }
+        }
+
+        // Give each set of equivalent labels one final label, numbered 1, 2, 3...
+        // in the order in which they were first encountered
+        int[] finalLabel = new int[next];
+        for (int label = 1; label < next; ++label) {
+            int root = find(parent, label);
+            if (root == label)
+                finalLabel[label] = ++count;
+            else
+                finalLabel[label] = finalLabel[root];
+        }
+
+        this.minX   = new int[count];
+        this.minY   = new int[count];
+        this.maxX   = new int[count];
+        this.maxY   = new int[count];
+        this.pixels = new int[count];
+        this.sumX   = new long[count];
+        this.sumY   = new long[count];
+
+        for (int i = 0; i < count; ++i) {
+            minX[i] = width;
+            minY[i] = height;
+            maxX[i] = -1;
+            maxY[i] = -1;
+        }
+
+        //******************************************************************************************
+        // SECOND PASS: final labels and statistics
+        //******************************************************************************************
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int label = labels[y * width + x];
+                if (label == 0)
+                    continue;
+
+                label = finalLabel[label];
+                labels[y * width + x] = label;
+
+                int i = label - 1;
+                if (x < minX[i]) minX[i] = x;
+                if (x > maxX[i]) maxX[i] = x;
+                if (y < minY[i]) minY[i] = y;
+                if (y > maxY[i]) maxY[i] = y;
+                pixels[i]++;
+                sumX[i] += x;
+                sumY[i] += y;
+            }
+        }
+    }
+
+    private static int smallest(int label, int neighbour) {
+        if (neighbour == 0)
+            return label;
+        return label == 0 ? neighbour : Math.min(label, neighbour);
+    }
+
+    private static int find(int[] parent, int label) {
+        while (parent[label] != label) {
+            // Path halving: point every other label at its grandparent
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        if (b == 0)
+            return;
+
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+
+        // The smaller label always becomes the root
+        if (rootA < rootB)
+            parent[rootB] = rootA;
+        else if (rootB < rootA)
+            parent[rootA] = rootB;
+    }
+
+    // Getters (components are numbered 0 through getCount() - 1)
+    public int   getCount()          {return this.count;}
+    public int   getMinX(int i)      {return this.minX[i];}
+    public int   getMinY(int i)      {return this.minY[i];}
+    public int   getMaxX(int i)      {return this.maxX[i];}
+    public int   getMaxY(int i)      {return this.maxY[i];}
+    public int   getPixels(int i)    {return this.pixels[i];}
+    public float getCentroidX(int i) {return (float)this.sumX[i] / this.pixels[i];}
+    public float getCentroidY(int i) {return (float)this.sumY[i] / this.pixels[i];}
+
+    /**
+     * Does a component reach the edge of the image? (A white component that
+     * doesn't is a hole, completely surrounded by black pixels)
+     * @param i The component
+     * @return true if the component touches any of the four edges
+     */
+    public boolean touchesEdge(int i) {
+        return minX[i] == 0 || minY[i] == 0 || maxX[i] == width - 1 || maxY[i] == height - 1;
+    }
+
+    /**
+     * Which component does a pixel belong to?
+     * @param x The column
+     * @param y The row
+     * @return The component, or -1 for a pixel of the other colour
+     */
+    public int componentAt(int x, int y) {
+        return labels[y * width + x] - 1;
+    }
+
+    /**
+     * Copy one or more components into an image of their own. Only the pixels
+     * of those components are copied, even where other components reach into
+     * their bounding box
+     * @param components The components (e.g. a letter and its dot)
+     * @return An image just big enough to hold the components
+     */
+    public BinaryImage extract(int... components) {
+        int x0 = width;
+        int y0 = height;
+        int x1 = -1;
+        int y1 = -1;
+
+        for (int i : components) {
+            x0 = Math.min(x0, minX[i]);
+            y0 = Math.min(y0, minY[i]);
+            x1 = Math.max(x1, maxX[i]);
+            y1 = Math.max(y1, maxY[i]);
+        }
+
+        BinaryImage image = new BinaryImage(x1 - x0 + 1, y1 - y0 + 1);
+        for (int y = y0; y <= y1; ++y) {
+            for (int x = x0; x <= x1; ++x) {
+                int label = labels[y * width + x] - 1;
+                if (label < 0)
+                    continue;
+
+                for (int i : components)
+                    if (label == i) {
+                        image.set(x - x0, y - y0);
+                        break;
+                    }
+            }
+        }
+        return image;
+    }
+}
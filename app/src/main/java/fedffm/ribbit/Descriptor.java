@@ -0,0 +1,195 @@
+package fedffm.ribbit;
+
+/**
+ * A fixed-length vector of numbers that describes the shape of a character,
+ * so that characters can be compared (or sorted, or ruled out) with a few
+ * dozen floats instead of their bitmaps. The vector holds, in order:
+ *
+ *      ZONES:             The fraction of black pixels in each cell of a
+ *                         ZONE_ROWS x ZONE_COLUMNS grid laid over the character
+ *      ROW_PROJECTION:    The share of the ink in each of PROJECTION_BINS bands
+ *                         of rows, from top to bottom
+ *      COLUMN_PROJECTION: The share of the ink in each of PROJECTION_BINS bands
+ *                         of columns, from left to right
+ *      CROSSINGS:         How many strokes a line crosses at 1/4, 1/2 and 3/4 of
+ *                         the height (left to right), then at 1/4, 1/2 and 3/4
+ *                         of the width (top to bottom)
+ *      HU_MOMENTS:        The seven Hu moments, which don't change when the
+ *                         character is moved, scaled or rotated (stored as
+ *                         sign * -log10|h|, since they span many orders of
+ *                         magnitude)
+ *
+ * Everything is gathered in one pass over the character's words
+ */
+public class Descriptor {
+    public static final int ZONE_ROWS       = 4;
+    public static final int ZONE_COLUMNS    = 4;
+    public static final int PROJECTION_BINS = 8;
+    public static final int SCAN_LINES      = 3;
+    public static final int NUM_HU_MOMENTS  = 7;
+
+    // Where each part of the vector starts
+    public static final int ZONES             = 0;
+    public static final int ROW_PROJECTION    = ZONES             + ZONE_ROWS * ZONE_COLUMNS;
+    public static final int COLUMN_PROJECTION = ROW_PROJECTION    + PROJECTION_BINS;
+    public static final int CROSSINGS         = COLUMN_PROJECTION + PROJECTION_BINS;
+    public static final int HU_MOMENTS        = CROSSINGS         + 2 * SCAN_LINES;
+    public static final int LENGTH            = HU_MOMENTS        + NUM_HU_MOMENTS;
+
+    /**
+     * Describe a character
+     * @param image The character's image
+     * @return A new vector of LENGTH floats
+     */
+    public static float[] compute(BinaryImage image) {
+        int width  = image.getWidth();
+        int height = image.getHeight();
+        float[] descriptor = new float[LENGTH];
+
+        int[] zones   = new int[ZONE_ROWS * ZONE_COLUMNS];
+        int[] rows    = new int[PROJECTION_BINS];
+        int[] columns = new int[PROJECTION_BINS];
+
+        // The rows and columns that the crossing counts are taken along, and
+        // whether the pixel above each scan column was black
+        int[]     scanRows    = new int[SCAN_LINES];
+        int[]     scanColumns = new int[SCAN_LINES];
+        boolean[] above       = new boolean[SCAN_LINES];
+        for (int s = 0; s < SCAN_LINES; ++s) {
+            scanRows[s]    = height * (s + 1) / (SCAN_LINES + 1);
+            scanColumns[s] = width  * (s + 1) / (SCAN_LINES + 1);
+        }
+
+        // Raw moments up to the third order (m21 is the sum of x * x * y, and so on)
+        double m00 = 0, m10 = 0, m01 = 0, m11 = 0, m20 = 0, m02 = 0;
+        double m30 = 0, m03 = 0, m21 = 0, m12 = 0;
+
+        for (int y = 0; y < height; ++y) {
+            int  zoneRow = y * ZONE_ROWS / height;
+            long carry   = 0;
+
+            // Sums of x, x^2 and x^3 over the black pixels of this row
+            double n = 0, sx = 0, sxx = 0, sxxx = 0;
+
+            for (int i = 0; i < image.getWordsPerRow(); ++i) {
+                long word = image.word(y, i);
+
+                // A stroke starts at every black pixel whose left neighbour is white
+                for (int s = 0; s < SCAN_LINES; ++s)
+                    if (y == scanRows[s])
+                        descriptor[CROSSINGS + s] += Long.bitCount(word & ~((word << 1) | carry));
+                carry = word >>> 63;
+
+                // Visit each set bit, lowest first
+                while (word != 0) {
+                    int x = (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+
+                    zones[zoneRow * ZONE_COLUMNS + x * ZONE_COLUMNS / width]++;
+                    columns[x * PROJECTION_BINS / width]++;
+
+                    n++;
+                    sx   += x;
+                    sxx  += (double)x * x;
+                    sxxx += (double)x * x * x;
+                }
+            }
+
+            // A stroke starts at every black pixel (of a scan column) whose top neighbour is white
+            for (int s = 0; s < SCAN_LINES; ++s) {
+                boolean black = image.get(scanColumns[s], y);
+                if (black && !above[s])
+                    descriptor[CROSSINGS + SCAN_LINES + s]++;
+                above[s] = black;
+            }
+
+            rows[y * PROJECTION_BINS / height] += (int)n;
+
+            m00 += n;
+            m10 += sx;
+            m01 += n * y;
+            m11 += sx * y;
+            m20 += sxx;
+            m02 += n * y * y;
+            m30 += sxxx;
+            m03 += n * y * y * y;
+            m21 += sxx * y;
+            m12 += sx * y * y;
+        }
+
+        // Ink density of each zone
+        for (int r = 0; r < ZONE_ROWS; ++r) {
+            for (int c = 0; c < ZONE_COLUMNS; ++c) {
+                int area = (height * (r + 1) / ZONE_ROWS - height * r / ZONE_ROWS) *
+                           (width  * (c + 1) / ZONE_COLUMNS - width  * c / ZONE_COLUMNS);
+                if (area > 0)
+                    descriptor[ZONES + r * ZONE_COLUMNS + c] = (float)zones[r * ZONE_COLUMNS + c] / area;
+            }
+        }
+
+        // An empty image has no projections or moments to speak of
+        if (m00 == 0)
+            return descriptor;
+
+        for (int b = 0; b < PROJECTION_BINS; ++b) {
+            descriptor[ROW_PROJECTION + b]    = (float)(rows[b]    / m00);
+            descriptor[COLUMN_PROJECTION + b] = (float)(columns[b] / m00);
+        }
+
+        // Central moments (taken around the centroid), then scaled by the ink
+        // so that the size of the character doesn't matter
+        double xc = m10 / m00;
+        double yc = m01 / m00;
+
+        double mu20 = m20 - xc * m10;
+        double mu02 = m02 - yc * m01;
+        double mu11 = m11 - xc * m01;
+        double mu30 = m30 - 3 * xc * m20 + 2 * xc * xc * m10;
+        double mu03 = m03 - 3 * yc * m02 + 2 * yc * yc * m01;
+        double mu21 = m21 - 2 * xc * m11 - yc * m20 + 2 * xc * xc * m01;
+        double mu12 = m12 - 2 * yc * m11 - xc * m02 + 2 * yc * yc * m10;
+
+        double second = m00 * m00;
+        double third  = Math.pow(m00, 2.5);
+
+        double n20 = mu20 / second, n02 = mu02 / second, n11 = mu11 / second;
+        double n30 = mu30 / third,  n03 = mu03 / third;
+        double n21 = mu21 / third,  n12 = mu12 / third;
+
+        double a = n30 + n12;
+        double b = n21 + n03;
+
+        double[] hu = {
+                n20 + n02,
+                (n20 - n02) * (n20 - n02) + 4 * n11 * n11,
+                (n30 - 3 * n12) * (n30 - 3 * n12) + (3 * n21 - n03) * (3 * n21 - n03),
+                a * a + b * b,
+                (n30 - 3 * n12) * a * (a * a - 3 * b * b) + (3 * n21 - n03) * b * (3 * a * a - b * b),
+                (n20 - n02) * (a * a - b * b) + 4 * n11 * a * b,
+                (3 * n21 - n03) * a * (a * a - 3 * b * b) - (n30 - 3 * n12) * b * (3 * a * a - b * b)
+        };
+
+        for (int h = 0; h < NUM_HU_MOMENTS; ++h)
+            if (hu[h] != 0)
+                descriptor[HU_MOMENTS + h] = (float)(-Math.signum(hu[h]) * Math.log10(Math.abs(hu[h])));
+
+        return descriptor;
+    }
+
+    /**
+     * How far apart are two descriptors? (The squared Euclidean distance over
+     * everything before the Hu moments: their logs span a far wider range than
+     * the rest, and would drown out the zones, projections and crossings)
+     * @param a A descriptor
+     * @param b Another descriptor
+     * @return 0 for identical descriptors, larger the more they differ
+     */
+    public static float distance(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < HU_MOMENTS; ++i) {
+            float d = a[i] - b[i];
+            sum += d * d;
+        }
+        return sum;
+    }
+}
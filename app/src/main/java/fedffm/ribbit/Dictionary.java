@@ -6,28 +6,38 @@ import android.util.Log;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
 public class Dictionary {
     private static final String LOG_TAG = "Dictionary";
-    private List<String> words;
 
+    // Never changes once loaded, so any number of threads can search it at once
+    private final List<String> words;
 
-    // Singleton (there is no need for multiple instances of the same dictionary)
-    private static Dictionary instance = null;
+
+    // Singleton (there is no need for multiple instances of the same dictionary).
+    // Volatile, so that a thread that sees the instance also sees its words
+    private static volatile Dictionary instance = null;
 
     // Prevent instantiation outside of this class
     private Dictionary(Context context) {
-        this.words = new ArrayList<>();
-        this.load(context);
+        this.words = Collections.unmodifiableList(load(context));
     }
 
-    // Return the instance of this class
+    // Return the instance of this class. Only the first call locks; the
+    // dictionary is loaded exactly once however many threads ask at the same time
     public static Dictionary getInstance(Context context) {
-        if (instance == null)
-            instance = new Dictionary(context);
-        return instance;
+        Dictionary dictionary = instance;
+        if (dictionary == null) {
+            synchronized (Dictionary.class) {
+                dictionary = instance;
+                if (dictionary == null)
+                    instance = dictionary = new Dictionary(context);
+            }
+        }
+        return dictionary;
     }
 
     /**
@@ -48,14 +58,16 @@ public class Dictionary {
 
     /**
      * Load the dictionary from a text file
+     * @return Every word, in the order they appear in the file
      */
-    private void load(Context context) {
+    private static List<String> load(Context context) {
+        List<String> words = new ArrayList<>();
         try {
             BufferedReader br = new BufferedReader(new InputStreamReader(context.getResources().openRawResource(R.raw.dictionary)));
             String line = br.readLine();
 
             while (line != null) {
-                this.words.add(line);
+                words.add(line);
                 line = br.readLine();
             }
 
@@ -63,6 +75,7 @@ public class Dictionary {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return words;
     }
 
     /**
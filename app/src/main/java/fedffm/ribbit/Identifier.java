@@ -1,15 +1,13 @@
 package fedffm.ribbit;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Color;
 import android.util.Log;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Identifier {
     private final static boolean LOGGING_ENABLED = true;
@@ -18,6 +16,162 @@ public class Identifier {
     private final static int    A_ASCII = 97;
     private final static int    Z_ASCII = 122;
 
+    // Identification modes
+    public static final int EXHAUSTIVE       = 0;   // Score every sample of every letter
+    public static final int BRANCH_AND_BOUND = 1;   // Score the most promising samples first, and
+                                                    // stop once the rest can't change the outcome
+    public static final int PYRAMID          = 2;   // Weed samples out on smaller templates first
+    public static final int SHORTLIST        = 3;   // Only score the samples with the nearest descriptors
+    private static volatile int mode = EXHAUSTIVE;
+
+    // The settings are volatile, so that identifying (on any number of
+    // threads at once) reads them without locking; only the setters lock
+
+    // The template levels that PYRAMID goes through (the last one is always
+    // the full template), and the fraction of the samples kept at each level.
+    // Set together, so that nobody sees the levels of one setting with the
+    // ratio of another
+    private static volatile Pyramid pyramid = new Pyramid(new int[] {Template.LEVELS - 2, Template.LEVELS - 1}, 0.25f);
+
+    // How many samples SHORTLIST scores, out of those nearest to the unknown
+    // character by descriptor
+    private static volatile int shortlist = 48;
+
+    // Scoring modes
+    public static final int OVERLAP = 0;    // The share of the sample's ink that the unknown also has
+    public static final int CHAMFER = 1;    // How close the two outlines are (see Template.chamfer())
+    private static volatile int scoring = OVERLAP;
+
+    // How many of the best letters branch-and-bound keeps exact (the winner
+    // is always exact; any more than one are only logged)
+    private static volatile int topK = 1;
+
+    // How many samples have been scored, and how many skipped, since resetComparisons()
+    private static final AtomicLong comparisonsMade  = new AtomicLong();
+    private static final AtomicLong comparisonsSaved = new AtomicLong();
+
+    /**
+     * PYRAMID's levels and prune ratio, which never change once made
+     */
+    public static class Pyramid {
+        private final int[] levels;
+        private final float ratio;
+
+        // Non-default
+        private Pyramid(int[] levels, float ratio) {
+            this.levels = levels;
+            this.ratio  = ratio;
+        }
+
+        /**
+         * @param ratio The fraction of the samples (0 - 1] that survive each level
+         * @param sizes The sizes of the levels to go through, smallest first and
+         *              ending with Template.SIZE (e.g. 8, 16, 32)
+         * @return The pyramid
+         */
+        public static Pyramid fromSizes(float ratio, int... sizes) {
+            if (ratio <= 0 || ratio > 1)
+                throw new IllegalArgumentException("ratio must be > 0 and <= 1");
+            if (sizes.length == 0 || sizes[sizes.length - 1] != Template.SIZE)
+                throw new IllegalArgumentException("The last level must be " + Template.SIZE + " x " + Template.SIZE);
+
+            int[] levels = new int[sizes.length];
+            for (int p = 0; p < sizes.length; ++p) {
+                levels[p] = -1;
+                for (int level = 0; level < Template.LEVELS; ++level)
+                    if (Template.levelSize(level) == sizes[p])
+                        levels[p] = level;
+
+                if (levels[p] < 0 || (p > 0 && levels[p] <= levels[p - 1]))
+                    throw new IllegalArgumentException("Levels must be template sizes, smallest first");
+            }
+            return new Pyramid(levels, ratio);
+        }
+
+        public int[] getLevels() {return levels.clone();}
+        public float getRatio()  {return ratio;}
+    }
+
+    private static void checkMode(int identificationMode) {
+        if (identificationMode != EXHAUSTIVE && identificationMode != BRANCH_AND_BOUND && identificationMode != PYRAMID &&
+            identificationMode != SHORTLIST)
+            throw new IllegalArgumentException("Unknown identification mode " + identificationMode);
+    }
+
+    private static void checkScoring(int scoringMode) {
+        if (scoringMode != OVERLAP && scoringMode != CHAMFER)
+            throw new IllegalArgumentException("Unknown scoring mode " + scoringMode);
+    }
+
+    public static synchronized void setMode(int identificationMode) {
+        checkMode(identificationMode);
+        mode = identificationMode;
+    }
+
+    /**
+     * Choose how a sample is scored against an unknown character. CHAMFER
+     * compares every sample of a letter, whatever its feature and ratio class,
+     * since a shifted stroke doesn't throw it off the way it does OVERLAP.
+     * BRANCH_AND_BOUND always scores by OVERLAP, since its bound only holds
+     * for OVERLAP, and PYRAMID only uses the scoring mode at full size
+     * @param scoringMode OVERLAP or CHAMFER
+     */
+    public static synchronized void setScoring(int scoringMode) {
+        checkScoring(scoringMode);
+        scoring = scoringMode;
+    }
+
+    public static synchronized void setTopK(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be >= 1");
+        topK = k;
+    }
+
+    /**
+     * Choose how PYRAMID weeds out samples
+     * @param ratio The fraction of the samples (0 - 1] that survive each level
+     * @param sizes The sizes of the levels to go through, smallest first and
+     *              ending with Template.SIZE (e.g. 8, 16, 32)
+     */
+    public static synchronized void setPyramid(float ratio, int... sizes) {
+        pyramid = Pyramid.fromSizes(ratio, sizes);
+    }
+
+    /**
+     * Choose how many samples SHORTLIST scores
+     * @param samples How many of the samples nearest by descriptor to score
+     */
+    public static synchronized void setShortlist(int samples) {
+        if (samples < 1)
+            throw new IllegalArgumentException("samples must be >= 1");
+        shortlist = samples;
+    }
+
+    public static int     getMode()          {return mode;}
+    public static int     getShortlist()     {return shortlist;}
+    public static int     getTopK()          {return topK;}
+    public static int     getScoring()       {return scoring;}
+    public static Pyramid getPyramid()       {return pyramid;}
+    public static int[]   getPyramidLevels() {return pyramid.levels.clone();}
+    public static float   getPruneRatio()    {return pyramid.ratio;}
+
+    private static void recordComparisons(int made, int saved) {
+        comparisonsMade.addAndGet(made);
+        comparisonsSaved.addAndGet(saved);
+    }
+
+    /**
+     * Forget the comparison counts gathered so far
+     */
+    public static void resetComparisons() {
+        comparisonsMade.set(0);
+        comparisonsSaved.set(0);
+    }
+
+    // How many samples were scored, and how many branch-and-bound skipped
+    public static long getComparisonsMade()  {return comparisonsMade.get();}
+    public static long getComparisonsSaved() {return comparisonsSaved.get();}
+
     /**
      * How does the width and height of the unidentified character compare with
      * the width and height of the known sample character
@@ -30,97 +184,138 @@ public class Identifier {
         // 0.5: The character is twice as tall as it is wide
         // 1.0: The character's width and height are exactly the same
         // 2.0: The character is twice as wide as it is tall
-        float sampleRatio  = (float)sample.getBitmap().getWidth()  / (float)sample.getBitmap().getHeight();
-        float unknownRatio = (float)unknown.getBitmap().getWidth() / (float)unknown.getBitmap().getHeight();
+        float sampleRatio  = (float)sample.getImage().getWidth()  / (float)sample.getImage().getHeight();
+        float unknownRatio = (float)unknown.getImage().getWidth() / (float)unknown.getImage().getHeight();
 
         // 1.0 == The dimension ratios of each character is exactly the same
         return Math.min(sampleRatio, unknownRatio) / Math.max(sampleRatio, unknownRatio);
     }
 
     /**
-     *
+     * What share of the sample's black pixels does the unknown character also
+     * have? Both characters are compared as templates (stretched to the same
+     * size), a word of 64 pixels at a time
      * @param sample A known character from our CharacterBase
      * @param unknown The character we are attempting to identify
      * @return A float representing how closely the pixels of each character match
      */
     private static float pixelDistributionSimilarity(Character sample, Character unknown) {
-        // Get the reference to the bitmaps
-        Bitmap sampleBitmap  = sample.getBitmap();
-        Bitmap unknownBitmap = unknown.getBitmap();
-
-        // Get the smaller dimensions
-        int smallerWidth  = Math.min(sampleBitmap.getWidth() , unknownBitmap.getWidth());
-        int smallerHeight = Math.min(sampleBitmap.getHeight(), unknownBitmap.getHeight());
-
         // Keep track of pixels:
-        //    1. pixelsUnknown:  How many (black) pixels the unidentified character contains
-        //    2. pixelsSample:   How many (black) pixels the sample character contains
-        //    3. pixelsMatching: How many (black) pixels are shared by BOTH characters
-        float pixelsUnknown  = 0;
-        float pixelsSample   = 0;
-        float pixelsMatching = 0;
-
-        // Iterate through the bitmap
-        for (int x = 0; x < smallerWidth; ++x)
-            for (int y = 0; y < smallerHeight; ++y) {
-                // Pixels encountered in the same location on both bitmaps
-                // contributes to the overall accuracy score
-                if (unknownBitmap.getPixel(x, y) == Color.BLACK &&
-                        sampleBitmap.getPixel(x, y) == Color.BLACK) {
-                    pixelsUnknown++;
-                    pixelsSample++;
-                    pixelsMatching++;
-                }
-
-                // Look for black pixels on an individual basis
-                else {
-                    if (unknownBitmap.getPixel(x, y) == Color.BLACK)
-                        pixelsUnknown++;
-                    if (sampleBitmap.getPixel(x, y) == Color.BLACK)
-                        pixelsSample++;
-                }
-            }
+        //    1. pixelsSample:   How many (black) pixels the sample character contains
+        //    2. pixelsMatching: How many (black) pixels are shared by BOTH characters
+        float pixelsSample   = sample.getTemplate().getInk();
+        float pixelsMatching = sample.getTemplate().overlap(unknown.getTemplate());
 
         // 1.0 == The character pixels of each character are exactly aligned
         return pixelsMatching / pixelsSample;
     }
 
+    /**
+     * How close are the outlines of the two characters? Both are compared as
+     * templates, each one's edges looked up in the other's chamfer distances
+     * @param sample A known character from our CharacterBase
+     * @param unknown The character we are attempting to identify
+     * @return A float representing how closely the outlines of each character match
+     */
+    private static float chamferSimilarity(Character sample, Character unknown) {
+        // 1.0 == The outlines of each character are exactly aligned
+        return chamferSimilarity(sample.getTemplate().chamfer(unknown.getTemplate()));
+    }
+
+    // 1.0 at a distance of 0, 0.5 when the outlines are a pixel apart on
+    // average, and so on
+    private static float chamferSimilarity(float distance) {
+        return 1 / (1 + distance / Template.STEP);
+    }
+
+    // Score sample j of a range the way that scoringMode says to
+    private static float score(SampleRange range, int j, Template unknown, int scoringMode) {
+        if (scoringMode == CHAMFER)
+            return chamferSimilarity(range.chamfer(j, unknown)) * 100;
+        return (float)range.overlap(j, unknown) / (float)range.getInk(j) * 100;
+    }
+
     /**
      * Walk through each of the bitmaps and see which pixels match, versus which do not.
      * @param sample a known character from our CharacterBase
      * @param unknown the character we are trying to identify.
      * @return A percentage representing how similar the characters are
      */
-    private static float similarity(Character sample, Character unknown) {
+    private static float similarity(Character sample, Character unknown, int scoringMode) {
         // Similarity measurements
         float dimensionalSimilarity       = dimensionalSimilarity(sample, unknown) * 100;
         float pixelDistributionSimilarity = pixelDistributionSimilarity(sample, unknown) * 100;
+        float chamferSimilarity           = chamferSimilarity(sample, unknown) * 100;
 
         // Combine these values to produce a "similarity score"
         float similarityScore = (dimensionalSimilarity + pixelDistributionSimilarity) / 2;
 
         if (DETAILED_LOGGING) {
-            Log.i(LOG_TAG, "unknown w: " + unknown.getBitmap().getWidth() + " unknown h: " + unknown.getBitmap().getHeight());
-            Log.i(LOG_TAG, "sample w:  " + sample.getBitmap().getWidth() + " sample h:  " + sample.getBitmap().getHeight());
+            Log.i(LOG_TAG, "unknown w: " + unknown.getImage().getWidth() + " unknown h: " + unknown.getImage().getHeight());
+            Log.i(LOG_TAG, "sample w:  " + sample.getImage().getWidth() + " sample h:  " + sample.getImage().getHeight());
             Log.i(LOG_TAG, "dimensionalSimilarity:       " + dimensionalSimilarity);
             Log.i(LOG_TAG, "pixelDistributionSimilarity: " + pixelDistributionSimilarity);
+            Log.i(LOG_TAG, "chamferSimilarity:           " + chamferSimilarity);
             Log.i(LOG_TAG, "similarityScore:             " + similarityScore);
             Log.i(LOG_TAG, "============================================================================");
         }
 
         //   0.0 == the two characters are completely different
         // 100.0 == the two characters are an identical match
-        return pixelDistributionSimilarity;
+        return scoringMode == CHAMFER ? chamferSimilarity : pixelDistributionSimilarity;
     }
 
     /**
-     * Identify a single character
+     * Identify a single character. Waits for every letter of the character
+     * base to load: until a letter's images have been decoded and its feature
+     * classes balanced, there's no telling which classes its samples fall
+     * into, so no letter can be ruled out before it has loaded
      * @param unknown The character to be identified
      * @return The character updated with a name and ASCII code
      */
     public static Character identify(Character unknown, Context context) {
-        // Start by getting the entire character base
-        List<Character> characterBase;
+        return identify(unknown, CharacterBase.getInstance(context).getAllSamples());
+    }
+
+    /**
+     * Identify a single character against a given set of samples, with the
+     * identification settings as they are right now
+     * @param unknown The character to be identified
+     * @param letters The samples of each letter ('a' first)
+     * @return The character updated with a name and ASCII code
+     */
+    public static Character identify(Character unknown, LetterSamples[] letters) {
+        return identify(unknown, letters, getMode(), getScoring(), getTopK(), getPyramid(), getShortlist());
+    }
+
+    /**
+     * Identify a single character against a given set of samples, with
+     * settings of its own rather than the global ones (which are neither read
+     * nor changed), so that anything identifying at the same time is unaffected
+     * @param unknown The character to be identified
+     * @param letters The samples of each letter ('a' first)
+     * @param identificationMode EXHAUSTIVE, BRANCH_AND_BOUND, PYRAMID or SHORTLIST
+     * @param scoringMode OVERLAP or CHAMFER (see setScoring())
+     * @param k How many of the best letters to keep (see setTopK())
+     * @param pyramidSettings The levels that PYRAMID goes through, and the fraction kept at each
+     * @param shortlistSize How many samples SHORTLIST scores
+     * @return The character updated with a name and ASCII code
+     */
+    public static Character identify(Character unknown, LetterSamples[] letters, int identificationMode, int scoringMode,
+                                     int k, Pyramid pyramidSettings, int shortlistSize) {
+        checkMode(identificationMode);
+        checkScoring(scoringMode);
+        if (k < 1)
+            throw new IllegalArgumentException("k must be >= 1");
+        if (shortlistSize < 1)
+            throw new IllegalArgumentException("samples must be >= 1");
+
+        if (identificationMode == BRANCH_AND_BOUND)
+            return identifyBranchAndBound(unknown, letters, k);
+        else if (identificationMode == PYRAMID)
+            return identifyPyramid(unknown, letters, k, scoringMode, pyramidSettings);
+        else if (identificationMode == SHORTLIST)
+            return identifyShortlist(unknown, letters, k, scoringMode, shortlistSize);
 
         // How many samples total did we compare against?
         int sampleCount;
@@ -138,29 +333,28 @@ public class Identifier {
 
         // Compare our unknown character against every character
         for (int i = A_ASCII; i <= Z_ASCII; ++i) {
-            // Get the full list of samples for each different type of character/letter
-            characterBase = CharacterBase.getInstance(context).getCharacterSamples((char)i);
-
             sampleCount = 0;
 
             // Keep track of the similarity scores for each character
             float bestSimilarityCurrentChar = (float)0.0;
             float sum = 0;
 
-            // Iterate through each sample in the list for the current character
-            for (int j = 0; j < characterBase.size(); ++j) {
-                // Compare the bitmap of the unknown character against the current sample
-                if (unknown.getFeatureClass() != characterBase.get(j).getFeatureClass() ||
-                    unknown.getRatioClass() != characterBase.get(j).getRatioClass())
-                    continue;
+            // Only compare against the samples (of each different type of
+            // character/letter) that share a feature class and ratio class,
+            // unless the outlines are compared
+            SampleRange samples = scoringMode == CHAMFER ? letters[i - A_ASCII].all() :
+                                  letters[i - A_ASCII].range(unknown.getFeatureClass(), unknown.getRatioClass());
 
+            for (int j = 0; j < samples.size(); ++j) {
                 // Log which character
                 if (DETAILED_LOGGING) {
                     Log.i(LOG_TAG, "character:             " + (char)i);
                     Log.i(LOG_TAG, "------------------------");
+                    similarity(samples.getSample(j), unknown, scoringMode);
                 }
 
-                float similarity = similarity(characterBase.get(j), unknown);
+                // The same measure as pixelDistributionSimilarity() or chamferSimilarity()
+                float similarity = score(samples, j, unknown.getTemplate(), scoringMode);
 
                 // Keep track of the best similarity for the current character
                 if (similarity > bestSimilarityCurrentChar)
@@ -209,6 +403,8 @@ public class Identifier {
             }
         }
 
+        recordComparisons(totalSampleCount, 0);
+
         // Which was the most commonly occuring measurement?
         int index = iGreatest;
 
@@ -230,6 +426,278 @@ public class Identifier {
         return unknown;
     }
 
+    /**
+     * Identify a single character, scoring the most promising samples first. A
+     * sample can share no more ink with the unknown character, band of rows by
+     * band of rows, than the lesser of the two has in that band, so its score
+     * can never beat
+     *
+     *      overlapBound() / sample ink * 100
+     *
+     * The samples of every letter are sorted by that bound (highest first), and
+     * scored in that order until the bound can't beat the k-th best letter so
+     * far: nothing after that can change the best k letters. The winner is
+     * always the one that the exhaustive scan would have picked, ties included
+     * (the earlier letter wins)
+     * @param unknown The character to be identified
+     * @param k How many of the best letters to keep exact
+     * @return The character updated with a name and ASCII code
+     */
+    private static Character identifyBranchAndBound(Character unknown, LetterSamples[] letters, int k) {
+        Template      template = unknown.getTemplate();
+        SampleRange[] ranges   = ranges(unknown, letters, OVERLAP);
+        int           eligible = 0;
+
+        for (SampleRange range : ranges)
+            eligible += range.size();
+
+        // One sort key per sample: the bound (highest first), then the letter
+        // and the sample (lowest first)
+        long[] candidates = new long[eligible];
+        int    c          = 0;
+        for (int l = 0; l < ranges.length; ++l)
+            for (int j = 0; j < ranges[l].size(); ++j)
+                candidates[c++] = sortKey(bound(ranges[l], j, template), l, j);
+        Arrays.sort(candidates);
+
+        // The best score of each letter so far, and the best k letters
+        float[] letterBest = new float[ranges.length];
+        float[] topScore   = new float[k];
+        int[]   topLetter  = new int[k];
+        int     found      = 0;
+        int     made       = 0;
+
+        for (long candidate : candidates) {
+            int   l     = (int)(candidate >>> 16) & 0xFFFF;
+            int   j     = (int)candidate & 0xFFFF;
+            float bound = bound(ranges[l], j, template);
+
+            // Every sample from here on has a bound no higher than this one's
+            if (!couldEnter(bound, l, topScore, topLetter, found))
+                break;
+
+            // This sample couldn't improve on its own letter's best
+            if (bound <= letterBest[l])
+                continue;
+
+            // The same measure as pixelDistributionSimilarity()
+            float similarity = (float)ranges[l].overlap(j, template) / (float)ranges[l].getInk(j) * 100;
+            made++;
+
+            if (similarity > letterBest[l]) {
+                letterBest[l] = similarity;
+                found = best(letterBest, topScore, topLetter);
+            }
+        }
+
+        return name(unknown, topScore, topLetter, found, made, eligible);
+    }
+
+    /**
+     * Identify a single character coarse-to-fine. Every sample is compared at
+     * the smallest level of the pyramid, only the best fraction of them go on
+     * to be compared at the next level, and so on up to the full template. The same measure is used at every level, so a sample
+     * that matches well at full size usually matches well when it's smaller,
+     * but unlike branch-and-bound there is no guarantee
+     * @param unknown The character to be identified
+     * @param k How many of the best letters to log
+     * @param scoringMode How samples are scored at full size
+     * @param settings The levels to go through, and the fraction kept at each
+     * @return The character updated with a name and ASCII code
+     */
+    private static Character identifyPyramid(Character unknown, LetterSamples[] letters, int k, int scoringMode,
+                                             Pyramid settings) {
+        Template      template    = unknown.getTemplate();
+        SampleRange[] ranges      = ranges(unknown, letters, scoringMode);
+        int[]         levels      = settings.levels;
+        float         ratio       = settings.ratio;
+        int           eligible    = 0;
+
+        for (SampleRange range : ranges)
+            eligible += range.size();
+
+        // Every sample starts out as a candidate
+        long[] candidates = new long[eligible];
+        int    count      = 0;
+        for (int l = 0; l < ranges.length; ++l)
+            for (int j = 0; j < ranges[l].size(); ++j)
+                candidates[count++] = sortKey(0, l, j);
+
+        // Keep the best fraction of the candidates at each smaller level
+        for (int p = 0; p < levels.length - 1 && count > 1; ++p) {
+            for (int c = 0; c < count; ++c) {
+                int l = (int)(candidates[c] >>> 16) & 0xFFFF;
+                int j = (int)candidates[c] & 0xFFFF;
+
+                int   ink   = ranges[l].getInk(j, levels[p]);
+                float score = ink == 0 ? 0 : (float)ranges[l].overlap(j, template, levels[p]) / (float)ink * 100;
+                candidates[c] = sortKey(score, l, j);
+            }
+            Arrays.sort(candidates, 0, count);
+            count = Math.max(1, (int)Math.ceil(count * ratio));
+        }
+
+        // Only the survivors are compared at full size
+        float[] letterBest = new float[ranges.length];
+        for (int c = 0; c < count; ++c) {
+            int l = (int)(candidates[c] >>> 16) & 0xFFFF;
+            int j = (int)candidates[c] & 0xFFFF;
+
+            // The same measure as pixelDistributionSimilarity() or chamferSimilarity()
+            float similarity = score(ranges[l], j, template, scoringMode);
+            if (similarity > letterBest[l])
+                letterBest[l] = similarity;
+        }
+
+        float[] topScore  = new float[k];
+        int[]   topLetter = new int[k];
+        int     found     = best(letterBest, topScore, topLetter);
+
+        return name(unknown, topScore, topLetter, found, count, eligible);
+    }
+
+    /**
+     * Identify a single character by scoring only the samples whose
+     * descriptors (see Descriptor) are nearest to its own. Comparing two
+     * descriptors costs a few dozen floats, far less than a template, so every
+     * sample is ranked that way first and only the nearest shortlistSize are
+     * scored. Like PYRAMID, there is no guarantee that the sample that would
+     * have scored best makes the list
+     * @param unknown The character to be identified
+     * @param k How many of the best letters to log
+     * @param scoringMode How the shortlisted samples are scored
+     * @param shortlistSize How many samples to score
+     * @return The character updated with a name and ASCII code
+     */
+    private static Character identifyShortlist(Character unknown, LetterSamples[] letters, int k, int scoringMode,
+                                               int shortlistSize) {
+        Template      template    = unknown.getTemplate();
+        float[]       descriptor  = unknown.getDescriptor();
+        SampleRange[] ranges      = ranges(unknown, letters, scoringMode);
+        int           eligible    = 0;
+
+        for (SampleRange range : ranges)
+            eligible += range.size();
+
+        // Rank every sample by how near its descriptor is (nearest first)
+        long[] candidates = new long[eligible];
+        int    c          = 0;
+        for (int l = 0; l < ranges.length; ++l)
+            for (int j = 0; j < ranges[l].size(); ++j)
+                candidates[c++] = sortKey(1 / (1 + ranges[l].descriptorDistance(j, descriptor)), l, j);
+        Arrays.sort(candidates);
+
+        // Only the nearest are scored
+        int     count      = Math.min(eligible, shortlistSize);
+        float[] letterBest = new float[ranges.length];
+        for (c = 0; c < count; ++c) {
+            int l = (int)(candidates[c] >>> 16) & 0xFFFF;
+            int j = (int)candidates[c] & 0xFFFF;
+
+            // The same measure as pixelDistributionSimilarity() or chamferSimilarity()
+            float similarity = score(ranges[l], j, template, scoringMode);
+            if (similarity > letterBest[l])
+                letterBest[l] = similarity;
+        }
+
+        float[] topScore  = new float[k];
+        int[]   topLetter = new int[k];
+        int     found     = best(letterBest, topScore, topLetter);
+
+        return name(unknown, topScore, topLetter, found, count, eligible);
+    }
+
+    // The samples of each letter that could be compared with a character
+    // (all of them, if the outlines are compared)
+    private static SampleRange[] ranges(Character unknown, LetterSamples[] letters, int scoringMode) {
+        SampleRange[] ranges = new SampleRange[letters.length];
+        for (int l = 0; l < letters.length; ++l)
+            ranges[l] = scoringMode == CHAMFER ? letters[l].all() :
+                        letters[l].range(unknown.getFeatureClass(), unknown.getRatioClass());
+        return ranges;
+    }
+
+    // Pack a score (highest first), a letter and a sample (lowest first) so
+    // that a plain sort of longs puts them in order
+    private static long sortKey(float score, int letter, int sample) {
+        return ((long)(Integer.MAX_VALUE - Float.floatToIntBits(score)) << 32) | ((long)letter << 16) | sample;
+    }
+
+    /**
+     * Name a character after the best letter, and record how many samples it
+     * took to decide
+     * @return The character updated with a name and ASCII code
+     */
+    private static Character name(Character unknown, float[] topScore, int[] topLetter, int found, int made, int eligible) {
+        recordComparisons(made, eligible - made);
+
+        // Set the character name and ascii code
+        int index = found > 0 ? A_ASCII + topLetter[0] : 0;
+        unknown.setName((char)index);
+        unknown.setAscii(index);
+
+        if (LOGGING_ENABLED) {
+            String candidateLetters = "";
+            for (int t = 0; t < found; ++t)
+                candidateLetters += " " + (char)(A_ASCII + topLetter[t]) + " - " + topScore[t];
+
+            Log.i(LOG_TAG, "============================================================================");
+            Log.i(LOG_TAG, "character " + unknown.getName() + " was compared against " + made + " of " + eligible + " samples");
+            Log.i(LOG_TAG, "Top " + topScore.length + ":" + candidateLetters);
+            Log.i(LOG_TAG, "============================================================================");
+        }
+        return unknown;
+    }
+
+    // The best score that a sample could possibly reach (a sample without any
+    // ink can't score at all)
+    private static float bound(SampleRange range, int j, Template unknown) {
+        if (range.getInk(j) == 0)
+            return 0;
+        return (float)range.overlapBound(j, unknown) / (float)range.getInk(j) * 100;
+    }
+
+    // Could a letter with this score make it into the best k letters (or move up among them)?
+    private static boolean couldEnter(float score, int letter, float[] topScore, int[] topLetter, int found) {
+        if (found < topScore.length)
+            return score > 0;
+
+        int last = found - 1;
+        return score > topScore[last] || (score == topScore[last] && letter < topLetter[last]);
+    }
+
+    /**
+     * Pick the best k letters (like the exhaustive scan, a letter needs a score
+     * above 0 to count, and the earlier letter wins a tie)
+     * @param letterBest The best score of each letter
+     * @param topScore Receives the scores of the best letters, best first
+     * @param topLetter Receives the best letters
+     * @return How many letters were picked (at most k)
+     */
+    private static int best(float[] letterBest, float[] topScore, int[] topLetter) {
+        int found = 0;
+        for (int l = 0; l < letterBest.length; ++l) {
+            if (letterBest[l] <= 0)
+                continue;
+
+            // Insertion sort; a later letter only goes ahead of a strictly lower score
+            int position = Math.min(found, topScore.length);
+            while (position > 0 && topScore[position - 1] < letterBest[l]) {
+                if (position < topScore.length) {
+                    topScore[position]  = topScore[position - 1];
+                    topLetter[position] = topLetter[position - 1];
+                }
+                position--;
+            }
+            if (position < topScore.length) {
+                topScore[position]  = letterBest[l];
+                topLetter[position] = l;
+                found = Math.min(found + 1, topScore.length);
+            }
+        }
+        return found;
+    }
+
     /**
      * Identify a word
      * @param unknownWord The Word to be identified
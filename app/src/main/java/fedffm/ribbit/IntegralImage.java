@@ -0,0 +1,74 @@
+package fedffm.ribbit;
+
+/**
+ * Summed-area tables of an image's luminance and squared luminance. Once
+ * built, the mean and variance of any rectangular window can be read with
+ * four lookups apiece, no matter how big the window is
+ */
+public class IntegralImage {
+    private int    width;
+    private int    height;
+    private int[]  sums;
+    private long[] squaredSums;
+
+    /**
+     * Build the tables
+     * @param luminance One grey value (0 - 255) per pixel, row by row
+     * @param width The width of the image
+     * @param height The height of the image
+     */
+    public IntegralImage(byte[] luminance, int width, int height) {
+        this.width       = width;
+        this.height      = height;
+        this.sums        = new int[(width + 1) * (height + 1)];
+        this.squaredSums = new long[(width + 1) * (height + 1)];
+
+        // Row 0 and column 0 of the tables stay zero, so that
+        // windows touching the edge of the image need no special case
+        for (int y = 0; y < height; ++y) {
+            int  rowSum        = 0;
+            long rowSquaredSum = 0;
+
+            for (int x = 0; x < width; ++x) {
+                int value = luminance[y * width + x] & 0xff;
+                rowSum        += value;
+                rowSquaredSum += value * value;
+
+                int i = (y + 1) * (width + 1) + (x + 1);
+                sums[i]        = sums[i - (width + 1)]        + rowSum;
+                squaredSums[i] = squaredSums[i - (width + 1)] + rowSquaredSum;
+            }
+        }
+    }
+
+    // Getters
+    public int getWidth()  {return this.width;}
+    public int getHeight() {return this.height;}
+
+    /**
+     * Sum of the luminance inside a window
+     * @param x0 The first column of the window
+     * @param y0 The first row of the window
+     * @param x1 One past the last column of the window
+     * @param y1 One past the last row of the window
+     * @return The sum of every grey value inside the window
+     */
+    public int sum(int x0, int y0, int x1, int y1) {
+        int stride = width + 1;
+        return sums[y1 * stride + x1] - sums[y0 * stride + x1] - sums[y1 * stride + x0] + sums[y0 * stride + x0];
+    }
+
+    /**
+     * Sum of the squared luminance inside a window
+     * @param x0 The first column of the window
+     * @param y0 The first row of the window
+     * @param x1 One past the last column of the window
+     * @param y1 One past the last row of the window
+     * @return The sum of every squared grey value inside the window
+     */
+    public long squaredSum(int x0, int y0, int x1, int y1) {
+        int stride = width + 1;
+        return squaredSums[y1 * stride + x1] - squaredSums[y0 * stride + x1] -
+               squaredSums[y1 * stride + x0] + squaredSums[y0 * stride + x0];
+    }
+}
@@ -0,0 +1,142 @@
+package fedffm.ribbit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Every sample of one letter, grouped by feature class and ratio class so that
+ * the samples an unknown character can be compared against always sit next to
+ * each other. Their templates are packed back to back in one array of words
+ * per level (the k-th sample's template starts at word
+ * k * Template.levelWords(level)), and so are their descriptors (the k-th
+ * sample's starts at k * Descriptor.LENGTH).
+ *
+ * A LetterSamples never changes once it has been built: adding a sample builds
+ * a new one, so a range handed out earlier stays valid (and unchanged) for as
+ * long as anyone holds on to it, and any number of threads can read it at once
+ */
+public class LetterSamples {
+    public static final int FEATURE_CLASSES = 13;
+    public static final int RATIO_CLASSES   = 3;
+
+    // Samples whose classes are out of range are kept in one last group that
+    // no lookup can reach
+    private static final int GROUPS = FEATURE_CLASSES * RATIO_CLASSES + 1;
+
+    // The samples in the order they were given
+    private List<Character> characters;
+
+    // Read directly by SampleRange
+    Character[] samples;
+    long[][]    templates;
+    int[][]     ink;
+    int[]       bandInk;
+    float[]     descriptors;
+
+    // Every sample's edge pixels back to back (sample k's are edges[edgeStart[k]]
+    // up to edges[edgeStart[k + 1]]), and its chamfer distances (sample k's
+    // start at distances[k * Template.SIZE * Template.SIZE])
+    short[]     edges;
+    int[]       edgeStart;
+    byte[]      distances;
+
+    // The samples of group g are samples[groupStart[g]] up to (not including)
+    // samples[groupStart[g + 1]]
+    private int[]       groupStart;
+
+    /**
+     * Group the samples of one letter. Within a group they keep the order that
+     * they were given in
+     * @param letter The samples (each with a template)
+     */
+    public LetterSamples(List<Character> letter) {
+        int count = letter.size();
+        this.characters = Collections.unmodifiableList(new ArrayList<>(letter));
+        this.samples    = new Character[count];
+        this.templates  = new long[Template.LEVELS][];
+        this.ink        = new int[Template.LEVELS][count];
+        this.bandInk    = new int[count * Template.BANDS];
+        this.descriptors = new float[count * Descriptor.LENGTH];
+        this.edgeStart  = new int[count + 1];
+        this.distances  = new byte[count * Template.SIZE * Template.SIZE];
+        this.groupStart = new int[GROUPS + 1];
+
+        for (int level = 0; level < Template.LEVELS; ++level)
+            this.templates[level] = new long[count * Template.levelWords(level)];
+
+        // Count the samples in each group, then turn the counts into the
+        // position where each group starts
+        for (Character sample : letter)
+            groupStart[group(sample.getFeatureClass(), sample.getRatioClass()) + 1]++;
+        for (int g = 0; g < GROUPS; ++g)
+            groupStart[g + 1] += groupStart[g];
+
+        int[] next = groupStart.clone();
+        for (Character sample : letter) {
+            int k = next[group(sample.getFeatureClass(), sample.getRatioClass())]++;
+
+            samples[k] = sample;
+            System.arraycopy(sample.getDescriptor(), 0, descriptors, k * Descriptor.LENGTH, Descriptor.LENGTH);
+            for (int b = 0; b < Template.BANDS; ++b)
+                bandInk[k * Template.BANDS + b] = sample.getTemplate().getBandInk(b);
+
+            for (int level = 0; level < Template.LEVELS; ++level) {
+                int words = Template.levelWords(level);
+                ink[level][k] = sample.getTemplate().getInk(level);
+                System.arraycopy(sample.getTemplate().getWords(level), 0, templates[level], k * words, words);
+            }
+
+            byte[] sampleDistances = sample.getTemplate().getDistances();
+            System.arraycopy(sampleDistances, 0, distances, k * sampleDistances.length, sampleDistances.length);
+        }
+
+        // The edges go in sample order, once every sample has its place
+        for (int k = 0; k < count; ++k)
+            edgeStart[k + 1] = edgeStart[k] + samples[k].getTemplate().getEdges().length;
+        this.edges = new short[edgeStart[count]];
+        for (int k = 0; k < count; ++k) {
+            short[] sampleEdges = samples[k].getTemplate().getEdges();
+            System.arraycopy(sampleEdges, 0, edges, edgeStart[k], sampleEdges.length);
+        }
+    }
+
+    private static int group(int featureClass, int ratioClass) {
+        if (featureClass < 0 || featureClass >= FEATURE_CLASSES || ratioClass < 0 || ratioClass >= RATIO_CLASSES)
+            return GROUPS - 1;
+        return featureClass * RATIO_CLASSES + ratioClass;
+    }
+
+    /**
+     * How many samples does the letter have?
+     * @return The number of samples
+     */
+    public int size() {return this.samples.length;}
+
+    /**
+     * Every sample of the letter, in the order they were given
+     * @return The samples (which can't be changed)
+     */
+    public List<Character> getCharacters() {return this.characters;}
+
+    /**
+     * The samples that share a feature class and a ratio class
+     * @param featureClass The feature class
+     * @param ratioClass The ratio class
+     * @return The samples (possibly none)
+     */
+    public SampleRange range(int featureClass, int ratioClass) {
+        int g = group(featureClass, ratioClass);
+        if (g == GROUPS - 1)
+            return new SampleRange(this, 0, 0);
+        return new SampleRange(this, groupStart[g], groupStart[g + 1]);
+    }
+
+    /**
+     * Every sample of the letter
+     * @return The samples, grouped by class
+     */
+    public SampleRange all() {
+        return new SampleRange(this, 0, samples.length);
+    }
+}
@@ -23,6 +23,7 @@ import android.widget.TextView;
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -35,6 +36,7 @@ public class MainActivity extends ActionBarActivity {
     private static final int REQUEST_IMAGE_CAPTURE = 1;
     private static final String LOG_TAG = "MainActivity";  // Log tag
     private static boolean DETAILED_LOGGING = false;
+    private static boolean BENCHMARK = false;
 
     // Main Activity views
     private Bitmap    bitmap;
@@ -64,6 +66,8 @@ public class MainActivity extends ActionBarActivity {
     private Dictionary dictionary;
     private CharacterBase characterBase;
     private boolean loadingCharBase = false;
+    private boolean firstResult     = true;
+    private boolean processing      = false;
     private String    imagePath = "";
 
 
@@ -78,18 +82,18 @@ public class MainActivity extends ActionBarActivity {
 
         @Override
         protected String doInBackground(String... params) {
-            // Make sure we're pulling characters from the character base
-            List<Character> characters;
             float timeStart;
 
             try {
-                // Keep track of how long it takes to load the character base
+                // Keep track of how long it takes to create the character base
                 loadingCharBase = true;
                 timeStart = System.nanoTime();
 
-                // Instantiate the singleton character base
+                // Instantiate the singleton character base. From a sample pack
+                // every letter is loaded by the time this returns; otherwise the
+                // letters carry on loading in the background, and nothing here
+                // waits for them (identifying does)
                 characterBase = CharacterBase.getInstance(MainActivity.this);
-                characters = characterBase.getAllCharacterSamples();
 
             } catch (Exception e) {
                 Log.e("LongOperation", "Interrupted", e);
@@ -98,7 +102,8 @@ public class MainActivity extends ActionBarActivity {
 
             float timeEnd = System.nanoTime();
             float secondsLoad = (timeEnd - timeStart) / 1000000000;
-            return characters.size() + " / " + CharacterBase.getInstance(MainActivity.this).size() + " samples loaded in " + secondsLoad + " seconds";
+            return "Character base created in " + secondsLoad + " seconds" +
+                   (characterBase.isWarm() ? ", every letter loaded" : ", letters still loading");
         }
 
         @Override
@@ -140,6 +145,10 @@ public class MainActivity extends ActionBarActivity {
      * Process the word in the background
      */
     class Processor extends AsyncTask<String, Void, String> {
+        // The bitmap being processed, which is given back to the Preprocessor
+        // once processing is done, if a new picture replaced it meanwhile
+        Bitmap processed = bitmap;
+
         // Get references to the loading elements
         TextView loading = (TextView) findViewById(fedffm.ribbit.R.id.loading);
         TextView wait    = (TextView) findViewById(fedffm.ribbit.R.id.wait);
@@ -174,6 +183,10 @@ public class MainActivity extends ActionBarActivity {
             wait.setVisibility(View.INVISIBLE);
             progressBar.setVisibility(View.INVISIBLE);
             Log.i(LOG_TAG, result);
+
+            processing = false;
+            if (processed != bitmap)
+                Preprocessor.release(processed);
         }
     }
 
@@ -249,6 +262,10 @@ public class MainActivity extends ActionBarActivity {
     @Override
     protected void onPause() {
         super.onPause();
+
+        // Learned samples are only synced to disk in batches
+        if (characterBase != null)
+            characterBase.syncLearned();
         if (DETAILED_LOGGING)
             Log.i(LOG_TAG, "MainActivity has been paused");
     }
@@ -331,11 +348,17 @@ public class MainActivity extends ActionBarActivity {
         if (DETAILED_LOGGING)
             Log.i(LOG_TAG, "The path to the image is: " + imagePath);
 
+        // Take the old bitmap off the screen, and give it back to be decoded
+        // into, unless it's still being processed (see Processor)
+        image = (ImageView) findViewById(fedffm.ribbit.R.id.imageView);
+        image.setImageDrawable(null);
+        if (!processing)
+            Preprocessor.release(bitmap);
+
         // Load the bitmap
         bitmap = Preprocessor.load(imagePath);
 
         // Put it into the Image View
-        image = (ImageView) findViewById(fedffm.ribbit.R.id.imageView);
         image.setImageBitmap(bitmap);
         image.setVisibility(View.VISIBLE);
         return true;
@@ -365,56 +388,71 @@ public class MainActivity extends ActionBarActivity {
             float timeStart;
             float timeEnd;
 
-            // Convert to greyscale
-            timeStart = System.nanoTime();
-            bitmap = Preprocessor.greyscale(bitmap);
-            timeEnd = System.nanoTime();
-            final float secondsGreyscale = (timeEnd - timeStart) / 1000000000;
-
-            // Binarize
-            timeStart = System.nanoTime();
-            bitmap = Preprocessor.binarize(bitmap);
-            timeEnd = System.nanoTime();
-            final float secondsBinarize = (timeEnd - timeStart) / 1000000000;
-
-            // Crop
+            // Convert to greyscale, binarize and crop (all in one pass)
             timeStart = System.nanoTime();
-            bitmap = Preprocessor.crop(bitmap);
+            BinaryImage image = Preprocessor.prepare(bitmap);
             timeEnd = System.nanoTime();
-            final float secondsCrop = (timeEnd - timeStart) / 1000000000;
+            final float secondsPrepare = (timeEnd - timeStart) / 1000000000;
 
             // Segment the characters
             timeStart = System.nanoTime();
-            List<Character> characters = Preprocessor.segmentCharacters(bitmap);
+            List<Character> characters = Preprocessor.segmentCharacters(image);
             timeEnd = System.nanoTime();
             final float secondsSeg = (timeEnd - timeStart) / 1000000000;
 
-            // Identify
+            // Identify (which waits for any letters that are still loading)
+            boolean warm = CharacterBase.getInstance(this).isWarm();
             timeStart = System.nanoTime();
             final String word = Identifier.identify(new Word(characters), this);
             timeEnd = System.nanoTime();
             final float secondsId = (timeEnd - timeStart) / 1000000000;
 
+            // How long after the character base started loading did the first
+            // result come back, and did identifying have to wait for letters?
+            if (firstResult) {
+                firstResult = false;
+                CharacterBase base = CharacterBase.getInstance(this);
+                Log.i(LOG_TAG, "First result " + (System.nanoTime() - base.getStartNanoTime()) / 1000000 + "ms after the character base started loading " +
+                               "(fully warm after " + base.getLoadNanoseconds() / 1000000 + "ms, " +
+                               (warm ? "before identification started)" : "while identification waited)"));
+            }
+
             // Total
-            final float secondsTotal = secondsGreyscale + secondsBinarize + secondsCrop + secondsSeg + secondsId;
+            final float secondsTotal = secondsPrepare + secondsSeg + secondsId;
+
+            // Compare the binarization modes and thread counts on this capture,
+            // see what classifying its glyphs costs, how much coarse-to-fine
+            // identification saves, how each scoring mode holds up, and what
+            // ranking the samples by descriptor first saves
+            if (BENCHMARK) {
+                Benchmark.binarizationModes(Collections.singletonList(bitmap), Collections.singletonList(word));
+                Benchmark.parallelism(Collections.singletonList(bitmap), Preprocessor.SAUVOLA);
+                Benchmark.classification(Collections.singletonList(bitmap), Preprocessor.SAUVOLA);
+                Benchmark.pyramid(this);
+                Benchmark.scoring(this);
+                Benchmark.shortlist(this);
+                Benchmark.bitSliced(this);
+            }
 
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
                     // Display each time
-                    greyscale.setText("greyscale conversion");
-                    binarize.setText("binarization");
-                    crop.setText("cropping");
+                    greyscale.setText("preprocessing");
                     segment.setText("segmentation");
                     identify.setText("identification");
                     total.setText("total");
-                    timeGreyscale.setText(String.format("%.2f", secondsGreyscale) + "s");
-                    timeBinarize.setText(String.format("%.2f", secondsBinarize) + "s");
-                    timeCrop.setText(String.format("%.2f", secondsCrop) + "s");
+                    timeGreyscale.setText(String.format("%.2f", secondsPrepare) + "s");
                     timeSegment.setText(String.format("%.2f", secondsSeg) + "s");
                     timeIdentify.setText(String.format("%.2f", secondsId) + "s");
                     timeTotal.setText(String.format("%.2f", secondsTotal) + "s");
 
+                    // Binarization and cropping are part of preprocessing now
+                    binarize.setVisibility(View.GONE);
+                    crop.setVisibility(View.GONE);
+                    timeBinarize.setVisibility(View.GONE);
+                    timeCrop.setVisibility(View.GONE);
+
                     // Display the word
                     textBox.setText(word);
                     textBox.setVisibility(View.VISIBLE);
@@ -439,6 +477,9 @@ public class MainActivity extends ActionBarActivity {
         processButton.setVisibility(View.INVISIBLE);
         retakeButton.setVisibility(View.INVISIBLE);
 
-        new Processor().execute();
+        // Not execute(): that would queue processing behind the loaders, which
+        // share one background thread. Identifying waits for the letters by itself
+        processing = true;
+        new Processor().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 }
\ No newline at end of file
@@ -0,0 +1,178 @@
+package fedffm.ribbit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Split an image into horizontal bands and work on the bands in parallel, on
+ * a fixed pool of worker threads shared by every stage of preprocessing.
+ *
+ * Each band is given its index, so that anything it computes (a histogram,
+ * a bounding box...) can be stored per band and merged in band order once
+ * every band has finished. That keeps the results identical no matter how
+ * many threads did the work, or in which order they finished
+ */
+public class ParallelBands {
+    // Bands shorter than this aren't worth handing to another thread
+    private static final int MIN_BAND_HEIGHT = 16;
+
+    private static int     parallelism = Runtime.getRuntime().availableProcessors();
+    private static Workers pool;
+
+    /**
+     * A pool of worker threads, and how many forEachBand() calls are still
+     * handing it work. A pool that has been replaced (see setParallelism())
+     * is only shut down once the last of them is done with it, so that nobody
+     * submits to a pool that has already been shut down
+     */
+    private static class Workers {
+        private final ThreadPoolExecutor executor;
+        private int                      users;
+        private boolean                  retired;
+
+        // Non-default
+        private Workers(ThreadPoolExecutor executor) {
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * The work to be done on one band of rows
+     */
+    public interface Band {
+        /**
+         * @param index Which band this is (0 is the top of the image)
+         * @param yFirst The first row of the band
+         * @param yLast One past the last row of the band
+         */
+        void run(int index, int yFirst, int yLast);
+    }
+
+    /**
+     * Set how many threads (including the calling thread) may work on an image
+     * at once. The default is the number of available processors
+     * @param threads The number of threads (1 keeps everything on the calling thread)
+     */
+    public static synchronized void setParallelism(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("parallelism must be >= 1");
+
+        if (threads != parallelism && pool != null) {
+            pool.retired = true;
+            if (pool.users == 0)
+                pool.executor.shutdown();
+            pool = null;
+        }
+        parallelism = threads;
+    }
+
+    public static synchronized int getParallelism() {return parallelism;}
+
+    /**
+     * How many bands will an image of a certain height be split into?
+     * @param height The height of the image
+     * @return The number of bands (at least 1)
+     */
+    public static synchronized int bandCount(int height) {
+        return bandCount(height, parallelism);
+    }
+
+    /**
+     * How many bands will an image of a certain height be split into by a
+     * given number of threads, whatever the parallelism is set to?
+     * @param height The height of the image
+     * @param threads The number of threads (including the calling thread)
+     * @return The number of bands (at least 1)
+     */
+    public static int bandCount(int height, int threads) {
+        return Math.max(1, Math.min(threads, height / MIN_BAND_HEIGHT));
+    }
+
+    /**
+     * Run a piece of work on every band of an image, and wait for all of it to
+     * finish. The calling thread takes the last band itself
+     * @param height The height of the image
+     * @param bands How many bands to split the image into (see bandCount())
+     * @param band The work to be done on each band
+     */
+    public static void forEachBand(int height, int bands, Band band) {
+        // Not worth the hand-off: stay on this thread
+        if (bands == 1) {
+            band.run(0, 0, height);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>();
+        Workers         workers = acquire(bands - 1);
+
+        try {
+            for (int i = 0; i < bands - 1; ++i)
+                futures.add(workers.executor.submit(task(band, i, height * i / bands, height * (i + 1) / bands)));
+
+            band.run(bands - 1, height * (bands - 1) / bands, height);
+
+            // Waiting on every future also guarantees that whatever the workers
+            // wrote is visible to this thread from here on
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a band", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ee.getCause();
+            throw new RuntimeException(ee.getCause());
+        } finally {
+            release(workers);
+        }
+    }
+
+    private static Runnable task(final Band band, final int index, final int yFirst, final int yLast) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                band.run(index, yFirst, yLast);
+            }
+        };
+    }
+
+    /**
+     * The worker threads are created the first time they're needed, and
+     * recreated only when the parallelism level changes. A caller that asks
+     * for more bands than there are workers (see bandCount(int, int)) gets
+     * the pool grown to fit. Every call must be matched by a call to release()
+     */
+    private static synchronized Workers acquire(int workers) {
+        if (pool == null) {
+            int threads = Math.max(workers, parallelism - 1);
+            pool = new Workers(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                                      new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private int count = 0;
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ParallelBands-" + (++count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }));
+        } else if (pool.executor.getMaximumPoolSize() < workers) {
+            pool.executor.setMaximumPoolSize(workers);
+            pool.executor.setCorePoolSize(workers);
+        }
+        pool.users++;
+        return pool;
+    }
+
+    // Done handing work to a pool; shut it down if it has been replaced
+    private static synchronized void release(Workers workers) {
+        if (--workers.users == 0 && workers.retired)
+            workers.executor.shutdown();
+    }
+}
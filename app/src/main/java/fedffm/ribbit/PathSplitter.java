@@ -0,0 +1,176 @@
+package fedffm.ribbit;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Split a segment that holds several touching characters by cutting it from
+ * top to bottom along the cheapest paths. A path may drift one column left or
+ * right on every row, so it can weave between characters that overlap each
+ * other's columns, and it only crosses ink where the characters really touch.
+ *
+ * Each cut is searched for with dynamic programming inside its own window of
+ * columns (the windows don't overlap), so splitting an image into any number
+ * of pieces costs one visit per pixel
+ */
+public class PathSplitter {
+    // The cost of stepping on a black pixel, and of drifting sideways by one
+    // column; crossing ink must always be worse than any amount of drifting
+    private static final int INK_COST   = 1000;
+    private static final int DRIFT_COST = 1;
+
+    // Touching characters only touch briefly: a cut that has to cross more
+    // black pixels than this fraction of the image's height would be cutting
+    // through a character instead
+    private static final float MAX_CROSSING = 0.2f;
+
+    private static final String LOG_TAG = "PathSplitter";
+    private static boolean DETAILED_LOGGING = false;
+
+    /**
+     * Cut an image into a number of pieces
+     * @param image The image containing the touching characters
+     * @param pieces How many characters the image is thought to contain (>= 2)
+     * @return One image per piece that contains any ink, from left to right (or
+     *         an empty list, if any cut would have to cross too much ink)
+     */
+    public static List<BinaryImage> split(BinaryImage image, int pieces) {
+        int width  = image.getWidth();
+        int height = image.getHeight();
+
+        // cuts[c][y] is the first column to the right of cut c on row y. The
+        // image's left and right edges act as cuts 0 and 'pieces'
+        pieces = Math.max(1, Math.min(pieces, width));
+        int[][] cuts = new int[pieces + 1][height];
+        Arrays.fill(cuts[pieces], width);
+
+        int previousLast = 0;
+        for (int c = 1; c < pieces; ++c) {
+            // Each cut searches the columns around where it would fall if
+            // every character were the same width
+            int centre = width * c / pieces;
+            int reach  = Math.max(1, width / (2 * pieces));
+            int first  = Math.max(previousLast + 1, centre - reach);
+            int last   = Math.min(width - 1, centre + reach - 1);
+
+            if (first > last)
+                first = last = Math.min(width - 1, previousLast + 1);
+
+            int crossed = cheapestPath(image, first, last, centre, cuts[c]) / INK_COST;
+            if (crossed > height * MAX_CROSSING) {
+                if (DETAILED_LOGGING)
+                    Log.i(LOG_TAG, "Cut " + c + " would cross " + crossed + " black pixels");
+                return new ArrayList<>();
+            }
+            previousLast = last;
+        }
+
+        List<BinaryImage> images = new ArrayList<>();
+        for (int p = 0; p < pieces; ++p) {
+            BinaryImage piece = piece(image, cuts[p], cuts[p + 1]);
+            if (piece != null)
+                images.add(piece);
+        }
+        return images;
+    }
+
+    /**
+     * Find the cheapest path from the top row to the bottom row within a
+     * window of columns
+     * @param image The image
+     * @param first The first column of the window
+     * @param last The last column of the window
+     * @param centre The column that the path should prefer to start at
+     * @param path Receives the column of the path on every row
+     * @return The cost of the path
+     */
+    private static int cheapestPath(BinaryImage image, int first, int last, int centre, int[] path) {
+        int width  = last - first + 1;
+        int height = image.getHeight();
+
+        int[]  cost     = new int[width];
+        int[]  next     = new int[width];
+        byte[] previous = new byte[width * height];   // -1, 0 or +1: where each step came from
+
+        // Starting closer to the centre is slightly cheaper, so that a blank
+        // window is cut straight down the middle
+        for (int i = 0; i < width; ++i)
+            cost[i] = DRIFT_COST * Math.abs(first + i - centre) + (image.get(first + i, 0) ? INK_COST : 0);
+
+        for (int y = 1; y < height; ++y) {
+            for (int i = 0; i < width; ++i) {
+                int  best = cost[i];
+                byte from = 0;
+
+                if (i > 0 && cost[i - 1] + DRIFT_COST < best) {
+                    best = cost[i - 1] + DRIFT_COST;
+                    from = -1;
+                }
+                if (i < width - 1 && cost[i + 1] + DRIFT_COST < best) {
+                    best = cost[i + 1] + DRIFT_COST;
+                    from = 1;
+                }
+
+                next[i] = best + (image.get(first + i, y) ? INK_COST : 0);
+                previous[y * width + i] = from;
+            }
+
+            int[] swap = cost;
+            cost = next;
+            next = swap;
+        }
+
+        // Walk back up from the cheapest end of the path
+        int end = 0;
+        for (int i = 1; i < width; ++i)
+            if (cost[i] < cost[end])
+                end = i;
+
+        for (int y = height - 1; y >= 0; --y) {
+            path[y] = first + end;
+            end += previous[y * width + end];
+        }
+        return cost[path[height - 1] - first];
+    }
+
+    /**
+     * Copy the pixels between two cuts into an image of their own, cropped
+     * the same way as the rest of segmentation
+     * @param image The image
+     * @param left The first column of the piece on every row
+     * @param right One past the last column of the piece on every row
+     * @return The piece, or null if it contains no ink
+     */
+    private static BinaryImage piece(BinaryImage image, int[] left, int[] right) {
+        int height = image.getHeight();
+        int x0 = image.getWidth();
+        int x1 = 0;
+
+        for (int y = 0; y < height; ++y) {
+            x0 = Math.min(x0, left[y]);
+            x1 = Math.max(x1, right[y]);
+        }
+        if (x0 >= x1)
+            return null;
+
+        // Copy the columns that the piece spans, then white out
+        // whatever lies outside of the cuts on each row
+        BinaryImage piece = image.crop(x0, 0, x1 - x0, height);
+        for (int y = 0; y < height; ++y) {
+            piece.clear(0, y, left[y] - x0, 1);
+            piece.clear(right[y] - x0, y, x1 - right[y], 1);
+        }
+
+        // A piece too small to crop holds no character
+        if (piece.count() < 2)
+            return null;
+        try {
+            return Preprocessor.crop(piece);
+        } catch (IllegalArgumentException iae) {
+            return null;
+        }
+    }
+}
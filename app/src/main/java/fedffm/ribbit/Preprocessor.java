@@ -2,15 +2,20 @@ package fedffm.ribbit;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorMatrix;
 import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
 import android.util.Log;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,21 +25,67 @@ public class Preprocessor {
     private static boolean DETAILED_LOGGING = false;
     private static final double THRESHOLD = 0.6;
 
-    /**
-     * Determine whether a set of coordinates are within the bounds of a given bitmap
-     * @param x the column in the bitmap
-     * @param y the row in the bitmap
-     * @param bitmap the image
-     * @return False if the coordinates are out of range
-     */
-    private static boolean withinBounds(int x, int y, Bitmap bitmap) {
-        return (x < bitmap.getWidth()  && x >= 0 && y < bitmap.getHeight() && y >= 0);
+    // load() scales photos down for as long as the characters stay at least
+    // TARGET_GLYPH_HEIGHT pixels tall, assuming that a character takes up about
+    // GLYPH_FRACTION of the shorter side of the frame
+    private static int TARGET_GLYPH_HEIGHT = 72;
+    private static final float GLYPH_FRACTION = 0.125f;
+
+    // A bitmap that was given back with release(), which the next load()
+    // decodes into (and takes back out of the pool)
+    private static Bitmap pooledBitmap;
+
+    // Binarization modes
+    public static final int GLOBAL  = 0;   // Every pixel is compared against THRESHOLD
+    public static final int OTSU    = 1;   // One threshold, picked from the image's histogram
+    public static final int SAUVOLA = 2;   // Every pixel gets a threshold from its neighbourhood
+
+    // Segmentation strategies
+    public static final int PROJECTION = 0;   // Characters are separated by blank columns
+    public static final int COMPONENTS = 1;   // Characters are separated wherever their pixels don't touch
+
+    // How unusually big segments are split up (see setSplitter())
+    public static final int PRECISION_SPLIT = 0;   // precisionSegmentation(), for two characters that don't touch
+    public static final int PATH_SPLIT      = 1;   // PathSplitter, for any number of touching characters
+    private static int SPLITTER = PRECISION_SPLIT;
+
+    // A component with less than this fraction of the biggest component's
+    // pixels is discarded as noise, unless it turns out to be a dot
+    private static final float NOISE_FRACTION = 0.02f;
+
+    // Sauvola parameters: the size of the window around each pixel, how much
+    // the window's contrast matters, and the dynamic range of the deviation
+    private static final int    SAUVOLA_WINDOW = 31;
+    private static final double SAUVOLA_K      = 0.34;
+    private static final double SAUVOLA_R      = 128.0;
+
+    // Squared distance of every channel value from the white and black
+    // extremes, so that binarize() never has to touch Math.sqrt/Math.pow
+    private static final int[] SQUARED_FROM_WHITE = new int[256];
+    private static final int[] SQUARED_FROM_BLACK = new int[256];
+
+    // Whether a grey pixel of a given luminance should become black
+    private static final boolean[] LUMINANCE_IS_BLACK = new boolean[256];
+
+    // Weights of the no-saturation ColorMatrix used by greyscale()
+    // (0.213, 0.715, 0.072), scaled so that they add up to 1024
+    private static final int RED_WEIGHT   = 218;
+    private static final int GREEN_WEIGHT = 732;
+    private static final int BLUE_WEIGHT  = 74;
+
+    static {
+        for (int i = 0; i <= 0xff; ++i) {
+            SQUARED_FROM_WHITE[i] = (0xff - i) * (0xff - i);
+            SQUARED_FROM_BLACK[i] = i * i;
+        }
+        for (int i = 0; i <= 0xff; ++i)
+            LUMINANCE_IS_BLACK[i] = isBlack(Color.rgb(i, i, i));
     }
 
     /**
-     * Examine the bitmap containing a word and perform segmentation using the
+     * Examine the image containing a word and perform segmentation using the
      * whitespace inbetween each character. Calculate the dimensions of each
-     * individual character, and use those dimensions to generate a bitmap
+     * individual character, and use those dimensions to generate an image
      * which will then be associated with an unidentified character
      *
      *  _________________
@@ -42,145 +93,177 @@ public class Preprocessor {
      * |  W | O | R | D  |
      *  -----------------
      *
-     * @param bitmap The bitmap image containing the written word
+     * @param image The image containing the written word
      * @return Returns an list of unidentified characters (image segments)
      */
-    private static List<Character> preliminarySegmentation(Bitmap bitmap) {
+    private static List<Character> preliminarySegmentation(BinaryImage image) {
         List<Character> characters = new ArrayList<>();
-        int pixels;
-        int pixelsPrevious;
-        int highestRow = bitmap.getHeight();
-        int lowestRow = 0;
-        boolean whiteSpace;
-        boolean whiteSpacePrevious;
-        boolean lastColumn;
-
-        // Track the number of characters the word contains
-        // as well as the number of columns (width) of each character
-        Integer characterCount   = 0;
-        Integer    columnCount   = 0;
-        Map<Integer, Integer> characterX      = new HashMap<>();
-        Map<Integer, Integer> characterY      = new HashMap<>();
-        Map<Integer, Integer> characterWidth  = new HashMap<>();
-        Map<Integer, Integer> characterHeight = new HashMap<>();
-
-        // Iterate through each column
-        for (int x = 0; x < bitmap.getWidth(); ++x) {
-
-            // Is this the last column?
-            lastColumn = x == bitmap.getWidth() - 1;
-
-            // Current column
-            pixels = 0;
-            whiteSpace = true;
-
-            // Previous column
-            pixelsPrevious = 0;
-            whiteSpacePrevious = false;
-
-            // Iterate through each row
-            for (int y = 0; y < bitmap.getHeight(); ++y) {
-                // If a black pixel is detected, increment the pixel count
-                if (bitmap.getPixel(x, y) == Color.BLACK) {
-                    // Any time we start scanning a new character, we need to store
-                    // the x coordinate where the new character begins
-                    if (characterX.size() == characterCount)
-                        characterX.put(characterCount, x);
-
-                    // Keep track of the highest point of the character
-                    if (y < highestRow) {
-                        highestRow = y;
-                    }
+        int width  = image.getWidth();
+        int height = image.getHeight();
+
+        // The vertical projection: how many black pixels are in each column.
+        // A character is a run of columns that contain black pixels, and the
+        // characters are separated by columns of whitespace
+        int[] columns = columnProfile(image);
+
+        // The column where the current character began (-1: between characters)
+        int characterX = -1;
+
+        for (int x = 0; x <= width; ++x) {
+            boolean whiteSpace = x == width || columns[x] == 0;
+
+            // Log pixel count
+            if (DETAILED_LOGGING && x < width)
+                Log.i(LOG_TAG, columns[x] + " pixels in column " + x);
+
+            // Any time we start scanning a new character, we need to store
+            // the x coordinate where the new character begins
+            if (!whiteSpace && characterX < 0)
+                characterX = x;
+
+            // If a column of white pixels is detected (or we ran out of columns)
+            // and the previous column contained black pixels, then we have
+            // finished scanning a new character
+            if (whiteSpace && characterX >= 0) {
+                int characterWidth = x - characterX;
+
+                // Use the row projection of the character's columns to find
+                // the highest and the lowest point of the character
+                int highestRow = 0;
+                while (image.countRow(highestRow, characterX, x) == 0)
+                    highestRow++;
+
+                int lowestRow = height - 1;
+                while (image.countRow(lowestRow, characterX, x) == 0)
+                    lowestRow--;
+
+                if (DETAILED_LOGGING) {
+                    Log.i(LOG_TAG, "-------------------------------------------------------------");
+                    Log.i(LOG_TAG, "Character number " + (characters.size() + 1) + ":");
+                    Log.i(LOG_TAG, "began at (x = " + characterX + ", (y = " + highestRow + ")");
+                    Log.i(LOG_TAG, "was " + characterWidth + " pixels wide");
+                    Log.i(LOG_TAG, "and " + (lowestRow - highestRow) + " pixels tall");
+                }
 
-                    // And the lowest point...
-                    if (y > lowestRow)
-                        lowestRow = y;
+                // Create a view of the character, create a new unidentified
+                // Character object associated with the image, and add it to the
+                // list of Characters
+                BinaryImage b = image.view(characterX, highestRow, characterWidth, lowestRow - highestRow);
+                characters.add(new Character(b));
 
-                    whiteSpace = false;
-                    pixels++;
-                } else
-                    whiteSpace = true;
+                characterX = -1;
+            }
+        }
 
+        if (DETAILED_LOGGING)
+            Log.i(LOG_TAG, characters.size() + " characters detected");
 
-                // Count how many pixels the entire previous column had
-                if (x > 0)
-                    if (bitmap.getPixel((x - 1), y) == Color.BLACK) {
-                        pixelsPrevious++;
-                        whiteSpacePrevious = false;
-                    } else
-                        whiteSpacePrevious = true;
+        return characters;
+    }
 
-            }
+    /**
+     * Segment the word by labelling its connected components: every group of
+     * touching black pixels becomes a character, so characters that overlap
+     * each other's columns without touching (the "og" case below) come apart
+     * without any special treatment. Components sitting entirely above a
+     * bigger one (letters share a baseline, so nothing else does) are the
+     * dots of an 'i' or a 'j', and are merged into the component below
+     *
+     *  ________             ___  ___
+     * |  .     |           | . ||   |
+     * |  | o   |   --->    | | || o |
+     *  --------             ---  ---
+     *
+     * @param image The image containing the written word
+     * @return A list of unidentified characters, from left to right
+     */
+    private static List<Character> componentSegmentation(BinaryImage image) {
+        List<Character> characters = new ArrayList<>();
+        ConnectedComponents components = new ConnectedComponents(image);
+        int count = components.getCount();
 
-            // The previous column contained one or more black pixels
-            if (pixelsPrevious != 0)
-                whiteSpacePrevious = false;
+        if (count == 0)
+            return characters;
 
-            // The current column contains one or more black pixels
-            if (pixels != 0) {
-                whiteSpace = false;
-                columnCount++;
-            }
+        // How big is the biggest component?
+        int largest = 0;
+        for (int i = 0; i < count; ++i)
+            largest = Math.max(largest, components.getPixels(i));
+
+        // owner[i] is the component that component i has been merged into
+        // (itself if it stands on its own, -1 if it was thrown away as noise)
+        int[] owner = new int[count];
+        for (int i = 0; i < count; ++i)
+            owner[i] = i;
+
+        for (int i = 0; i < count; ++i) {
+            // Look for the bigger component underneath this one whose columns
+            // are closest to this one's centre. Dots are rarely placed dead
+            // centre, so they may miss by up to their own width
+            float centre   = components.getCentroidX(i);
+            float slack    = components.getMaxX(i) - components.getMinX(i) + 1;
+            float distance = slack;
+            int   below    = -1;
+
+            for (int j = 0; j < count; ++j) {
+                if (j == i || components.getPixels(j) <= components.getPixels(i))
+                    continue;
+                if (components.getMaxY(i) >= components.getMinY(j))
+                    continue;
 
-            // Log pixel count and column count
-            if (DETAILED_LOGGING) {
-                if (columnCount != 0)
-                    Log.e(LOG_TAG, "Iterating column count to " + columnCount);
-                Log.i(LOG_TAG, pixels + " pixels in column " + x);
+                float d = Math.max(0, Math.max(components.getMinX(j) - centre, centre - components.getMaxX(j)));
+                if (d < distance || (d == distance && below >= 0 && components.getMinY(j) < components.getMinY(below))) {
+                    distance = d;
+                    below    = j;
+                }
             }
 
-            // If a column of white pixels is detected
-            // AND
-            // the previous column contained black pixels...
-            // OR
-            // If this was the last column...
-            // then we have finished scanning a new character
-            if (whiteSpace && !whiteSpacePrevious) {
-                characterY.put(characterCount, highestRow);
-                characterHeight.put(characterCount, lowestRow);
-                characterWidth.put(characterCount, columnCount);
-                characterCount++;
-                columnCount = 0;
-                lowestRow = 0;
-                highestRow = bitmap.getHeight();
-            } else if (lastColumn) {
-                characterY.put(characterCount, highestRow);
-                characterHeight.put(characterCount, lowestRow);
-                characterWidth.put(characterCount, columnCount);
-            }
+            if (below >= 0)
+                owner[i] = below;
+            else if (components.getPixels(i) < largest * NOISE_FRACTION)
+                owner[i] = -1;
         }
 
-        // Log:
-        //    1. # of characters
-        //    2. Size of map (should match # of characters)
-        //    3. Width of each character (obtained from map)
-        if (DETAILED_LOGGING) {
-            Log.i(LOG_TAG, (characterCount + 1) +  " characters detected");
-            Log.i(LOG_TAG, "Size of map: " + characterWidth.size());
-
-            for (int i = 0; i <= characterCount; ++i) {
-                Log.i(LOG_TAG, "-------------------------------------------------------------");
-                Log.i(LOG_TAG, "-------------------------------------------------------------");
-                Log.i(LOG_TAG, "Character number " + (i + 1) + ":");
-                Log.i(LOG_TAG, "began at (x = " + characterX.get(i) + ", (y = " + characterY.get(i) + ")");
-                Log.i(LOG_TAG, "was " + characterWidth.get(i) + " pixels wide");
-                Log.i(LOG_TAG, "and " + characterHeight.get(i) + " pixels tall");
-            }
+        // A dot may have been merged into something that was itself merged
+        for (int i = 0; i < count; ++i)
+            while (owner[i] >= 0 && owner[owner[i]] != owner[i])
+                owner[i] = owner[owner[i]];
+
+        // Order the surviving components from left to right, then build
+        // one character out of each, along with anything merged into it
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            if (owner[i] != i)
+                continue;
+
+            int position = order.size();
+            while (position > 0 && components.getMinX(order.get(position - 1)) > components.getMinX(i))
+                position--;
+            order.add(position, i);
         }
 
-        // Create a subimage for each separate character, create a new unidentified
-        // Character object associated with each image, and add it to the list of
-        // Characters
-        for (int i = 0; i <= characterCount; ++i) {
-            Bitmap b = Bitmap.createBitmap(bitmap,
-                                           characterX.get(i),
-                                           characterY.get(i),
-                                           characterWidth.get(i),
-                                           (characterHeight.get(i)) - characterY.get(i));
-
-            Character c = new Character(b);
-            characters.add(c);
+        for (int i : order) {
+            int parts = 0;
+            for (int j = 0; j < count; ++j)
+                if (owner[j] == i)
+                    parts++;
+
+            int[] members = new int[parts];
+            for (int j = 0, k = 0; j < count; ++j)
+                if (owner[j] == i)
+                    members[k++] = j;
+
+            if (DETAILED_LOGGING)
+                Log.i(LOG_TAG, "Character number " + (characters.size() + 1) + ": " + parts +
+                               " component(s), " + components.getPixels(i) + " pixels, centred at (" +
+                               components.getCentroidX(i) + ", " + components.getCentroidY(i) + ")");
+
+            characters.add(new Character(components.extract(members)));
         }
+
+        if (DETAILED_LOGGING)
+            Log.i(LOG_TAG, characters.size() + " characters detected");
+
         return characters;
     }
 
@@ -192,14 +275,14 @@ public class Preprocessor {
      * An example might be the characters: "og" , in the event that the 'tail'
      * of the "g" (without touching) cross under the "o" character
      *
-     * @param bitmap The bitmap image containing the written word
+     * @param image The image containing the written word
      * @return A map containing the necessary bitmap dimensions to create a sub image
      *
      */
-    private static Map<String, Integer> getAdjacentCharacterDimensions(Bitmap bitmap) {
+    private static Map<String, Integer> getAdjacentCharacterDimensions(BinaryImage image) {
         // What are the dimensions of the bitmap?
         if (DETAILED_LOGGING)
-            Log.i(LOG_TAG, "The size of the segment is: " + bitmap.getWidth() + " x " + bitmap.getHeight());
+            Log.i(LOG_TAG, "The size of the segment is: " + image.getWidth() + " x " + image.getHeight());
 
         // Keep track of the dimensions
         Map<String, Integer> dimensions = new HashMap<>();
@@ -225,7 +308,7 @@ public class Preprocessor {
         List<Integer> yCoordinates = new ArrayList<>();
 
         // Begin iterating through the columns
-        for (int x = 0; x < bitmap.getWidth(); ++x) {
+        for (int x = 0; x < image.getWidth(); ++x) {
             // Every time we begin iterating down a new column, we
             // ought to start with an empty list of y coordinates
             yCoordinates.clear();
@@ -235,7 +318,7 @@ public class Preprocessor {
                 Log.e(LOG_TAG, "> " + x + ",0");
 
             // Move down the column one row at a time
-            for (int y = 0; y < bitmap.getHeight(); ++y) {
+            for (int y = 0; y < image.getHeight(); ++y) {
                 // Each time we begin iterating back through a new row,
                 // we should start with an empty list of x coordinates
                 xCoordinates.clear();
@@ -251,14 +334,11 @@ public class Preprocessor {
 
                 // If we encounter a black pixel while iterating down this column,
                 // simply move on to the next column
-                if (bitmap.getPixel(xCopy, y) == Color.BLACK) {
-                    if (DETAILED_LOGGING)
-                        bitmap.setPixel(xCopy, y, Color.MAGENTA);
+                if (image.get(xCopy, y))
                     break;
-                }
 
                 // For each row that we move down, backtrack to the first column
-                while (xCopy > 0 && bitmap.getPixel(xCopy, y) == Color.WHITE) {
+                while (xCopy > 0 && !image.get(xCopy, y)) {
                     xCoordinates.add(xCopy);
                     --xCopy;
                 }
@@ -266,7 +346,7 @@ public class Preprocessor {
                 // If we are able to freely back-track all the way to the first column
                 // (the left-most edge of the bitmap), make sure that we've captured
                 // black pixels
-                if (xCopy == 0 && bitmap.getPixel(xCopy, y) == Color.WHITE) {
+                if (xCopy == 0 && !image.get(xCopy, y)) {
                     int numBlackPixels = 0;
                     xCoordinates.add(xCopy);
 
@@ -275,17 +355,14 @@ public class Preprocessor {
                     for (int i = 0; i < xCoordinates.size(); ++i) {
                         for (int j = 0; j < yCoordinates.size(); ++j) {
                             // For ever black pixel encountered within the area, increment the count
-                            if (bitmap.getPixel(xCoordinates.get(i), yCoordinates.get(j)) == Color.BLACK) {
+                            if (image.get(xCoordinates.get(i), yCoordinates.get(j)))
                                 numBlackPixels++;
-                                if (DETAILED_LOGGING)
-                                    bitmap.setPixel(xCoordinates.get(i), yCoordinates.get(j), Color.DKGRAY);
-                            }
                         }
                     }
 
                     // Calculate what percent of the bitmap's area is occupied by
                     // the pixels that have been captured
-                    float areaOfSegment = bitmap.getWidth() * bitmap.getHeight();
+                    float areaOfSegment = image.getWidth() * image.getHeight();
                     float areaOfPixels = numBlackPixels / areaOfSegment * 100;
 
                     // Continue iterating if the section of the bitmap:
@@ -300,19 +377,6 @@ public class Preprocessor {
                         Log.i(LOG_TAG, "There were " + numBlackPixels + " pixels in the captured area");
                         Log.i(LOG_TAG, "Great success!");
                         Log.i(LOG_TAG, "The captured pixels comprise " + areaOfPixels + "% of the image's area");
-
-                        // Draw the column first
-                        for (int i = 0; i < yCoordinates.size(); ++i) {
-                            // Draw a line so that we can see where the cropping occurs
-                            if (withinBounds(x, yCoordinates.get(i), bitmap))
-                                bitmap.setPixel(x, yCoordinates.get(i), Color.RED);
-                        }
-                        // Now draw the row
-                        for (int i = 0; i < xCoordinates.size(); ++i) {
-                            // Draw a line so that we can see where the cropping occurs
-                            if (withinBounds(xCoordinates.get(i), y, bitmap))
-                                bitmap.setPixel(xCoordinates.get(i), y, Color.RED);
-                        }
                     }
 
                     // Return the starting point of the sub-image (x, y)
@@ -348,7 +412,7 @@ public class Preprocessor {
         yCoordinates = new ArrayList<>();
 
         // Begin iterating through the columns
-        for (int x = bitmap.getWidth() - 1; x >= 0; --x) {
+        for (int x = image.getWidth() - 1; x >= 0; --x) {
             // Every time we begin iterating down a new column, we
             // ought to start with an empty list of y coordinates
             yCoordinates.clear();
@@ -358,7 +422,7 @@ public class Preprocessor {
                 Log.e(LOG_TAG, "< " + x + ",0");
 
             // Move down the column one row at a time
-            for (int y = 0; y < bitmap.getHeight(); ++y) {
+            for (int y = 0; y < image.getHeight(); ++y) {
                 // Each time we begin iterating back through a new row,
                 // we should start with an empty list of x coordinates
                 xCoordinates.clear();
@@ -374,14 +438,11 @@ public class Preprocessor {
 
                 // If we encounter a black pixel while iterating down this column,
                 // simply move on to the next column
-                if (bitmap.getPixel(xCopy, y) == Color.BLACK) {
-                    if (DETAILED_LOGGING)
-                        bitmap.setPixel(xCopy, y, Color.MAGENTA);
+                if (image.get(xCopy, y))
                     break;
-                }
 
                 // For each row that we move down, backtrack to the first column
-                while (xCopy < bitmap.getWidth() - 1 && bitmap.getPixel(xCopy, y) == Color.WHITE) {
+                while (xCopy < image.getWidth() - 1 && !image.get(xCopy, y)) {
                     // Log which row we are preparing to back-trace through
                     if (DETAILED_LOGGING)
                         Log.i(LOG_TAG, "> " + x + "," + y);
@@ -393,7 +454,7 @@ public class Preprocessor {
                 // If we are able to freely back-track all the way to the first column
                 // (the left-most edge of the bitmap), make sure that we've captured
                 // black pixels
-                if (xCopy == bitmap.getWidth() - 1 && bitmap.getPixel(xCopy, y) == Color.WHITE) {
+                if (xCopy == image.getWidth() - 1 && !image.get(xCopy, y)) {
                     int numBlackPixels = 0;
                     xCoordinates.add(xCopy);
 
@@ -402,17 +463,14 @@ public class Preprocessor {
                     for (int i = 0; i < xCoordinates.size(); ++i) {
                         for (int j = 0; j < yCoordinates.size(); ++j) {
                             // For ever black pixel encountered within the area, increment the count
-                            if (bitmap.getPixel(xCoordinates.get(i), yCoordinates.get(j)) == Color.BLACK) {
+                            if (image.get(xCoordinates.get(i), yCoordinates.get(j)))
                                 numBlackPixels++;
-                                if (DETAILED_LOGGING)
-                                    bitmap.setPixel(xCoordinates.get(i), yCoordinates.get(j), Color.DKGRAY);
-                            }
                         }
                     }
 
                     // Calculate what percent of the bitmap's area is occupied by
                     // the pixels that have been captured
-                    float areaOfSegment = bitmap.getWidth() * bitmap.getHeight();
+                    float areaOfSegment = image.getWidth() * image.getHeight();
                     float areaOfPixels = numBlackPixels / areaOfSegment * 100;
 
                     // Continue iterating if the section of the bitmap:
@@ -427,26 +485,13 @@ public class Preprocessor {
                         Log.i(LOG_TAG, "There were " + numBlackPixels + " pixels in the captured area");
                         Log.i(LOG_TAG, "Great success!");
                         Log.i(LOG_TAG, "The captured pixels comprise " + areaOfPixels + "% of the image's area");
-
-                        // Draw the column first
-                        for (int i = 0; i < yCoordinates.size(); ++i) {
-                            // Draw a line so that we can see where the cropping occurs
-                            if (withinBounds(x, yCoordinates.get(i), bitmap))
-                                bitmap.setPixel(x, yCoordinates.get(i), Color.RED);
-                        }
-                        // Now draw the row
-                        for (int i = 0; i < xCoordinates.size(); ++i) {
-                            // Draw a line so that we can see where the cropping occurs
-                            if (withinBounds(xCoordinates.get(i), y, bitmap))
-                                bitmap.setPixel(xCoordinates.get(i), y, Color.RED);
-                        }
                     }
 
                     // Return the starting point of the sub-image (x, y)
                     // as well as the width (w), and the height (h)
                     dimensions.put("x", x);
                     dimensions.put("y", 0);
-                    dimensions.put("w", bitmap.getWidth() - x);
+                    dimensions.put("w", image.getWidth() - x);
                     dimensions.put("h", y);
 
                     return dimensions;
@@ -464,11 +509,11 @@ public class Preprocessor {
      * An example might be the characters: "og" , in the event that the 'tail'
      * of the "g" (without touching) cross under the "o" character
      *
-     * @param original The bitmap image containing two characters
+     * @param original The image containing two characters
      * @return A list of two unidentified characters
      *
      */
-    private static List<Character> precisionSegmentation(Bitmap original) {
+    private static List<Character> precisionSegmentation(BinaryImage original) {
         List<Character> characters = new ArrayList<>();
 
         // Start by getting the dimensions of one of the characters
@@ -485,21 +530,21 @@ public class Preprocessor {
             int w = dimensions.get("w");
             int h = dimensions.get("h");
 
-            // Prepare two new bitmaps that will be derived from the original
-            Bitmap characterOne;
-            Bitmap characterTwo;
+            // Prepare two new images that will be derived from the original
+            BinaryImage characterOne;
+            BinaryImage characterTwo;
 
-            // Create the bitmap for the first character
-            characterOne = Bitmap.createBitmap(original, x, y, w, h);
+            // Create the image for the first character
+            characterOne = original.view(x, y, w, h);
 
-            // Now remove the character from the original bitmap
-            for (int i = x; i < (x+ w); ++i)
-                for (int j = y; j < (y + h); ++j)
-                    original.setPixel(i, j, Color.WHITE);
+            // Now remove the character from a copy of the original image (the
+            // original may be a view of the whole word, which must not change)
+            BinaryImage remainder = original.copy();
+            remainder.clear(x, y, w, h);
 
             // Crop out the excess whitespace that was just created
             characterOne = crop(characterOne);
-            characterTwo = crop(original);
+            characterTwo = crop(remainder);
 
 
             // Determine the order of the segmented characters
@@ -524,27 +569,52 @@ public class Preprocessor {
      * | RD  |   ------>   | R|  |D |
      *  ------             ----  ----
      *
-     * @param bitmap The bitmap image containing the written word
+     * @param image The image containing the written word
      * @return A list of characters
      *
      */
-    private static List<Character> divisionSegmentation(Bitmap bitmap) {
+    private static List<Character> divisionSegmentation(BinaryImage image) {
         List<Character> characters = new ArrayList<>();
 
         // Create the first sub-image
         int x = 0;
         int y = 0;
-        int w = bitmap.getWidth() / 2;
-        int h = bitmap.getHeight();
-        characters.add(new Character(Bitmap.createBitmap(bitmap, x, y, w, h)));
+        int w = image.getWidth() / 2;
+        int h = image.getHeight();
+        characters.add(new Character(image.view(x, y, w, h)));
 
         // Create the second sub-image
-        x = bitmap.getWidth() / 2;
+        x = image.getWidth() / 2;
         y = 0;
-        w = bitmap.getWidth() / 2;
-        h = bitmap.getHeight();
-        characters.add(new Character(Bitmap.createBitmap(bitmap, x, y, w, h)));
+        w = image.getWidth() / 2;
+        h = image.getHeight();
+        characters.add(new Character(image.view(x, y, w, h)));
+
+        return characters;
+    }
 
+    /**
+     * Cut a segment holding several characters, touching or not, into
+     * pieces along the cheapest top-to-bottom paths (see PathSplitter)
+     *
+     *  _______              __  __  __
+     * |  ___  |   ----->   |  ||  ||  |
+     * |  RNG  |   ----->   | R|| N|| G|
+     *  -------              --  --  --
+     *
+     * @param image The image containing the characters
+     * @param pieces How many characters the image is thought to contain
+     * @return A list of characters, or an empty list if fewer than two pieces contain ink
+     */
+    private static List<Character> pathSegmentation(BinaryImage image, int pieces) {
+        List<Character> characters = new ArrayList<>();
+        List<BinaryImage> images = PathSplitter.split(image, pieces);
+
+        if (images.size() < 2)
+            return characters;
+
+        for (BinaryImage piece : images)
+            characters.add(new Character(piece));
         return characters;
     }
 
@@ -582,30 +652,206 @@ public class Preprocessor {
         return ((distanceFromWhite/distance) > THRESHOLD);
     }
 
+    /**
+     * Table-driven version of shouldBeBlack(). With THRESHOLD = 0.6:
+     *
+     *      dW / (dW + dB) > 0.6   <=>   2 * dW > 3 * dB   <=>   4 * dW^2 > 9 * dB^2
+     *
+     * so the decision can be made with the squared distances alone, which
+     * come straight out of the lookup tables as integers
+     * @param pixel The pixel in question
+     * @return true if the pixel should be black (same answer as shouldBeBlack)
+     */
+    private static boolean isBlack(int pixel) {
+        if ((pixel >>> 24) == 0x00) // Transparent pixels will be white
+            return false;
+
+        int redValue   = (pixel >> 16) & 0xff;
+        int greenValue = (pixel >> 8)  & 0xff;
+        int blueValue  =  pixel        & 0xff;
+
+        int fromWhite = SQUARED_FROM_WHITE[redValue] + SQUARED_FROM_WHITE[greenValue] + SQUARED_FROM_WHITE[blueValue];
+        int fromBlack = SQUARED_FROM_BLACK[redValue] + SQUARED_FROM_BLACK[greenValue] + SQUARED_FROM_BLACK[blueValue];
+
+        if (4 * fromWhite != 9 * fromBlack)
+            return 4 * fromWhite > 9 * fromBlack;
+
+        // The pixel sits exactly on the threshold, where the answer depends on
+        // how the floating-point math rounds. Let the original calculation decide
+        return shouldBeBlack(pixel);
+    }
+
+    /**
+     * Set how tall (in pixels) characters should still be after load() has
+     * scaled the image down. Smaller values decode faster and use less memory
+     * @param height The minimum height of a character
+     */
+    public static void setTargetGlyphHeight(int height) {
+        if (height <= 0)
+            throw new IllegalArgumentException("height must be > 0");
+        TARGET_GLYPH_HEIGHT = height;
+    }
+
+    public static int getTargetGlyphHeight() {return TARGET_GLYPH_HEIGHT;}
+
     /**
      * Load the bitmap image
      * @param imagePath The path where the image is located
      * @return Returns the image
      */
     public static Bitmap load(String imagePath) {
+        return load(imagePath, null);
+    }
+
+    /**
+     * Load the bitmap image, or just part of it. The image is scaled down by
+     * the largest power of two that still leaves the characters at least
+     * TARGET_GLYPH_HEIGHT pixels tall (which works out to 1/4 for a typical
+     * 8 megapixel camera), and is decoded into the pixels of the previously
+     * loaded image whenever the platform allows it
+     *
+     * The bitmap that is returned belongs to the caller until it is given
+     * back with release(); only then can a later load() decode into it
+     *
+     * @param imagePath The path where the image is located
+     * @param region The part of the image that contains the word (in the
+     *               image's full resolution coordinates), or null for all of it
+     * @return Returns the image, or null if it couldn't be decoded
+     */
+    public static Bitmap load(String imagePath, Rect region) {
         // Create a file for the bitmap
         File imageFile = new File(imagePath);
-        Bitmap bitmap = null;
+        if (!imageFile.exists())
+            return null;
+
+        long timeStart = System.nanoTime();
+
+        // Read the dimensions of the image without decoding any pixels
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+
+        // Keep the region inside of the image
+        if (region != null) {
+            region = new Rect(Math.max(0, region.left), Math.max(0, region.top),
+                              Math.min(options.outWidth, region.right), Math.min(options.outHeight, region.bottom));
+            if (region.width() <= 0 || region.height() <= 0)
+                return null;
+        }
 
-        // Scale the image down to 1/4, and generate the bitmap
-        if (imageFile.exists()) {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inSampleSize = 4;
-            options.inMutable = true;
-            bitmap = BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
+        // How tall are the characters likely to be? A region is expected to be
+        // drawn around the word, otherwise the word fills a fraction of the frame
+        int glyphHeight = region != null ? region.height() :
+                          (int)(Math.min(options.outWidth, options.outHeight) * GLYPH_FRACTION);
 
-            // Log the information
-            if (DETAILED_LOGGING)
-                Log.i(LOG_TAG, "Scaled height: " + bitmap.getHeight() + " Scaled width: " + bitmap.getWidth());
+        int sampleSize = 1;
+        while (glyphHeight / (sampleSize * 2) >= TARGET_GLYPH_HEIGHT)
+            sampleSize *= 2;
+
+        int width  = (region != null ? region.width()  : options.outWidth)  / sampleSize;
+        int height = (region != null ? region.height() : options.outHeight) / sampleSize;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inBitmap = reusable(width, height, sampleSize, region != null);
+        Bitmap reused = options.inBitmap;
+
+        Bitmap bitmap = decode(imageFile.getAbsolutePath(), region, options);
+
+        // The decoder refuses a buffer it can't use; decode into a new one instead
+        if (bitmap == null && options.inBitmap != null) {
+            options.inBitmap = null;
+            bitmap = decode(imageFile.getAbsolutePath(), region, options);
+        }
+
+        // The decoder couldn't use the pooled bitmap, so it is still free
+        if (options.inBitmap == null && reused != null)
+            release(reused);
+
+        // Log the information
+        if (DETAILED_LOGGING && bitmap != null) {
+            Log.i(LOG_TAG, "Sample size: " + sampleSize + " Scaled height: " + bitmap.getHeight() +
+                           " Scaled width: " + bitmap.getWidth());
+            Log.i(LOG_TAG, "Decoded in " + (System.nanoTime() - timeStart) / 1000000 + "ms, " +
+                           (options.inBitmap != null ? "reusing" : "allocating") + " " +
+                           bitmap.getByteCount() + " bytes");
         }
         return bitmap;
     }
 
+    /**
+     * Give back a bitmap that load() returned, once it is no longer shown or
+     * being processed, so that the next load() can decode into its pixels
+     * rather than allocating new ones
+     * @param bitmap The bitmap, which the caller must not use again
+     */
+    public static synchronized void release(Bitmap bitmap) {
+        if (bitmap != null && bitmap.isMutable() && !bitmap.isRecycled())
+            pooledBitmap = bitmap;
+    }
+
+    /**
+     * Can the bitmap that was given back hold the next one? If so, it is
+     * taken out of the pool, so that no two loads decode into it. Since KitKat any
+     * mutable bitmap that is big enough will do. Before that, BitmapFactory
+     * only reuses a bitmap of exactly the same size, and only when the image
+     * isn't being scaled down, and BitmapRegionDecoder doesn't reuse at all
+     * @param width The width of the image about to be decoded
+     * @param height The height of the image about to be decoded
+     * @param sampleSize The sample size it will be decoded with
+     * @param region Whether only a region of the image will be decoded
+     * @return The bitmap to decode into, or null
+     */
+    private static synchronized Bitmap reusable(int width, int height, int sampleSize, boolean region) {
+        Bitmap candidate = pooledBitmap;
+        if (candidate == null || candidate.isRecycled() || !candidate.isMutable())
+            return null;
+
+        boolean fits;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+            fits = candidate.getAllocationByteCount() >= width * height * 4;
+        else
+            fits = !region && sampleSize == 1 && candidate.getWidth() == width && candidate.getHeight() == height &&
+                   candidate.getConfig() == Bitmap.Config.ARGB_8888;
+
+        if (fits)
+            pooledBitmap = null;
+        return fits ? candidate : null;
+    }
+
+    /**
+     * Decode the whole image, or one region of it
+     * @param path The path where the image is located
+     * @param region The region to decode, or null for the whole image
+     * @param options The decoding options
+     * @return The bitmap, or null if it couldn't be decoded
+     */
+    private static Bitmap decode(String path, Rect region, BitmapFactory.Options options) {
+        try {
+            if (region == null)
+                return BitmapFactory.decodeFile(path, options);
+
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(path, false);
+            try {
+                return decoder.decodeRegion(region, options);
+            } finally {
+                decoder.recycle();
+            }
+        } catch (IllegalArgumentException iae) {
+            // Thrown when options.inBitmap can't be reused
+            Log.e(LOG_TAG, "Error: Unable to reuse the previous bitmap");
+            return null;
+        } catch (IOException ioe) {
+            Log.e(LOG_TAG, "Error: Unable to decode " + path);
+            ioe.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * Convert a colored image to greyscale
      * @param source The original bitmap image
@@ -642,38 +888,320 @@ public class Preprocessor {
      * @return The binarized bitmap image
      */
     public static Bitmap binarize(Bitmap bitmap) {
-        // Iterate through the bitmap
-        for (int x = 0; x < bitmap.getWidth(); x++) {
-            for (int y = 0; y < bitmap.getHeight(); y++) {
-
-                // Determine whether the pixel should be black
-                // or white
-                if (shouldBeBlack(bitmap.getPixel(x, y)))
-                    bitmap.setPixel(x, y, Color.BLACK);
-                else
-                    bitmap.setPixel(x, y, Color.WHITE);
-            }
+        int width  = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] row  = new int[width];
+
+        // Pull the bitmap in one row at a time, rather than
+        // calling getPixel()/setPixel() for every single pixel
+        for (int y = 0; y < height; ++y) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+
+            // Determine whether each pixel should be black
+            // or white
+            for (int x = 0; x < width; ++x)
+                row[x] = isBlack(row[x]) ? Color.BLACK : Color.WHITE;
+
+            // Write the whole row back
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
         }
         return bitmap;
     }
 
+    /**
+     * Calculate the luminance of a pixel the same way greyscale() does
+     * @param pixel The pixel in question
+     * @return The grey value (0 - 255) of the pixel
+     */
+    private static int luminance(int pixel) {
+        return (RED_WEIGHT   * ((pixel >> 16) & 0xff) +
+                GREEN_WEIGHT * ((pixel >> 8)  & 0xff) +
+                BLUE_WEIGHT  * ( pixel        & 0xff) + 512) >> 10;
+    }
+
+    /**
+     * Pick a single threshold that best separates the dark pixels from the
+     * light ones (Otsu's method: maximize the variance between the two groups)
+     * @param histogram How many pixels there are of each grey value
+     * @param total The number of pixels in the image
+     * @return Grey values at or below the threshold are black
+     */
+    private static int otsuThreshold(int[] histogram, int total) {
+        long sumAll = 0;
+        for (int i = 0; i <= 0xff; ++i)
+            sumAll += (long)i * histogram[i];
+
+        long   sumDark       = 0;
+        int    countDark     = 0;
+        double bestVariance  = -1;
+        int    bestThreshold = 0;
+
+        for (int t = 0; t <= 0xff; ++t) {
+            countDark += histogram[t];
+            sumDark   += (long)t * histogram[t];
+
+            int countLight = total - countDark;
+            if (countDark == 0)
+                continue;
+            if (countLight == 0)
+                break;
+
+            double meanDark  = (double)sumDark / countDark;
+            double meanLight = (double)(sumAll - sumDark) / countLight;
+            double variance  = (double)countDark * countLight * (meanDark - meanLight) * (meanDark - meanLight);
+
+            if (variance > bestVariance) {
+                bestVariance  = variance;
+                bestThreshold = t;
+            }
+        }
+        return bestThreshold;
+    }
+
+    /**
+     * Should a pixel be black, judging by the pixels around it? (Sauvola's method)
+     * The mean and standard deviation of the window around the pixel come
+     * straight out of the integral image, so this costs the same for every pixel
+     * @param integral The summed-area tables of the image
+     * @param x The column of the pixel
+     * @param y The row of the pixel
+     * @param value The grey value of the pixel
+     * @return true if the pixel should be black
+     */
+    private static boolean sauvolaIsBlack(IntegralImage integral, int x, int y, int value) {
+        int radius = SAUVOLA_WINDOW / 2;
+        int x0 = Math.max(0, x - radius);
+        int y0 = Math.max(0, y - radius);
+        int x1 = Math.min(integral.getWidth(),  x + radius + 1);
+        int y1 = Math.min(integral.getHeight(), y + radius + 1);
+        int count = (x1 - x0) * (y1 - y0);
+
+        double mean      = (double)integral.sum(x0, y0, x1, y1) / count;
+        double variance  = (double)integral.squaredSum(x0, y0, x1, y1) / count - mean * mean;
+        double deviation = Math.sqrt(Math.max(0, variance));
+
+        return value <= mean * (1 + SAUVOLA_K * (deviation / SAUVOLA_R - 1));
+    }
+
+    /**
+     * Greyscale, binarize and crop the image with the global threshold
+     * @param source The image as it was loaded
+     * @return The cropped, binarized image
+     */
+    public static BinaryImage prepare(Bitmap source) {
+        return prepare(source, GLOBAL);
+    }
+
+    /**
+     * Greyscale, binarize and crop the image. Each row of the decoded image is
+     * read exactly once, and every pixel goes straight into a packed binary image
+     * while the bounding box of the black pixels is tracked. The source bitmap
+     * is left untouched
+     *
+     * GLOBAL does everything in that one pass. OTSU and SAUVOLA have to see the
+     * whole image before they can decide anything, so they keep the luminance
+     * of every pixel (one byte each) and binarize from that in a second pass
+     *
+     * Both passes split the image into horizontal bands (see ParallelBands).
+     * Every band keeps its own histogram and bounding box, which are merged in
+     * band order afterwards, so the result doesn't depend on the thread count
+     *
+     * @param source The image as it was loaded
+     * @param mode GLOBAL, OTSU or SAUVOLA
+     * @return The cropped, binarized image
+     */
+    public static BinaryImage prepare(Bitmap source, int mode) {
+        return prepare(source, mode, ParallelBands.getParallelism());
+    }
+
+    /**
+     * Greyscale, binarize and crop the image on a given number of threads,
+     * whatever the parallelism is set to (see prepare(Bitmap, int))
+     * @param source The image as it was loaded
+     * @param mode GLOBAL, OTSU or SAUVOLA
+     * @param threads How many threads (including this one) may work on it
+     * @return The cropped, binarized image
+     */
+    public static BinaryImage prepare(final Bitmap source, final int mode, int threads) {
+        final int width  = source.getWidth();
+        final int height = source.getHeight();
+        final int bands  = ParallelBands.bandCount(height, threads);
+        final BinaryImage binary = new BinaryImage(width, height);
+
+        final byte[] grey = mode == GLOBAL ? null : new byte[width * height];
+        IntegralImage integral      = null;
+        int           otsuThreshold = 0;
+
+        if (mode != GLOBAL) {
+            final int[][] histograms = new int[bands][256];
+
+            ParallelBands.forEachBand(height, bands, new ParallelBands.Band() {
+                @Override
+                public void run(int index, int yFirst, int yLast) {
+                    int[] row       = new int[width];
+                    int[] histogram = histograms[index];
+
+                    for (int y = yFirst; y < yLast; ++y) {
+                        source.getPixels(row, 0, width, 0, y, width, 1);
+                        for (int x = 0; x < width; ++x) {
+                            // Transparent pixels will be white
+                            int value = (row[x] >>> 24) == 0x00 ? 0xff : luminance(row[x]);
+                            grey[y * width + x] = (byte)value;
+                            histogram[value]++;
+                        }
+                    }
+                }
+            });
+
+            if (mode == OTSU) {
+                int[] histogram = new int[256];
+                for (int[] band : histograms)
+                    for (int i = 0; i <= 0xff; ++i)
+                        histogram[i] += band[i];
+                otsuThreshold = otsuThreshold(histogram, width * height);
+            }
+            else
+                integral = new IntegralImage(grey, width, height);
+
+            if (DETAILED_LOGGING && mode == OTSU)
+                Log.i(LOG_TAG, "Otsu threshold: " + otsuThreshold);
+        }
+
+        // Bounding box of the black pixels in each band
+        final int[] xFirsts = new int[bands];
+        final int[] xLasts  = new int[bands];
+        final int[] yFirsts = new int[bands];
+        final int[] yLasts  = new int[bands];
+
+        final IntegralImage sauvola   = integral;
+        final int           threshold = otsuThreshold;
+
+        ParallelBands.forEachBand(height, bands, new ParallelBands.Band() {
+            @Override
+            public void run(int index, int yFirst, int yLast) {
+                int[] row = mode == GLOBAL ? new int[width] : null;
+
+                int xFirstBlack = width;
+                int xLastBlack  = -1;
+                int yFirstBlack = height;
+                int yLastBlack  = -1;
+
+                for (int y = yFirst; y < yLast; ++y) {
+                    if (mode == GLOBAL)
+                        source.getPixels(row, 0, width, 0, y, width, 1);
+
+                    // Every row of the binary image has words of its own,
+                    // so bands never write to the same word
+                    boolean blackRow = false;
+                    for (int x = 0; x < width; ++x) {
+                        boolean black;
+
+                        if (mode == GLOBAL)
+                            // Transparent pixels will be white
+                            black = (row[x] >>> 24) != 0x00 && LUMINANCE_IS_BLACK[luminance(row[x])];
+                        else if (mode == OTSU)
+                            black = (grey[y * width + x] & 0xff) <= threshold;
+                        else
+                            black = sauvolaIsBlack(sauvola, x, y, grey[y * width + x] & 0xff);
+
+                        if (black) {
+                            binary.set(x, y);
+                            blackRow = true;
+
+                            if (x < xFirstBlack)
+                                xFirstBlack = x;
+                            if (x > xLastBlack)
+                                xLastBlack = x;
+                        }
+                    }
+
+                    if (blackRow) {
+                        if (y < yFirstBlack)
+                            yFirstBlack = y;
+                        yLastBlack = y;
+                    }
+                }
+
+                xFirsts[index] = xFirstBlack;
+                xLasts[index]  = xLastBlack;
+                yFirsts[index] = yFirstBlack;
+                yLasts[index]  = yLastBlack;
+            }
+        });
+
+        // Merge the bands' bounding boxes
+        int xFirst = width;
+        int xLast  = -1;
+        int yFirst = height;
+        int yLast  = -1;
+
+        for (int i = 0; i < bands; ++i) {
+            xFirst = Math.min(xFirst, xFirsts[i]);
+            xLast  = Math.max(xLast,  xLasts[i]);
+            yFirst = Math.min(yFirst, yFirsts[i]);
+            yLast  = Math.max(yLast,  yLasts[i]);
+        }
+
+        // Log the info
+        if (DETAILED_LOGGING) {
+            Log.i(LOG_TAG, "First column: " + xFirst + " Last column: " + xLast);
+            Log.i(LOG_TAG, "First row:    " + yFirst + " Last row:    " + yLast);
+        }
+
+        // Same dimensions that crop() would produce
+        return binary.crop(xFirst, yFirst, xLast - xFirst, yLast - yFirst);
+    }
+
+    /**
+     * The vertical projection of the image (how many black pixels are in each
+     * column), with each band of rows counted on its own thread and the
+     * bands' counts added up in order
+     * @param image The image
+     * @return One count per column
+     */
+    public static int[] columnProfile(final BinaryImage image) {
+        int bands = ParallelBands.bandCount(image.getHeight());
+        final int[][] profiles = new int[bands][];
+
+        ParallelBands.forEachBand(image.getHeight(), bands, new ParallelBands.Band() {
+            @Override
+            public void run(int index, int yFirst, int yLast) {
+                profiles[index] = image.columnProfile(yFirst, yLast);
+            }
+        });
+
+        int[] columns = profiles[0];
+        for (int i = 1; i < bands; ++i)
+            for (int x = 0; x < columns.length; ++x)
+                columns[x] += profiles[i][x];
+        return columns;
+    }
+
+    /**
+     * Choose how segments that are unusually big (probably more than one
+     * character) get split up
+     * @param splitter PRECISION_SPLIT or PATH_SPLIT
+     */
+    public static void setSplitter(int splitter) {SPLITTER = splitter;}
+    public static int  getSplitter()             {return SPLITTER;}
+
     /**
      * Crop out all of the excess white background
-     * @param bitmap The original bitmap
-     * @return The cropped bitmap
+     * @param image The original image
+     * @return A view of the image without the excess background
      */
-    public static Bitmap crop(Bitmap bitmap) {
+    public static BinaryImage crop(BinaryImage image) {
         // Coordinates
         int xFirst = 0;
         int xLast  = 0;
-        int yFirst = bitmap.getHeight();
+        int yFirst = image.getHeight();
         int yLast  = 0;
 
 
         // Get the column range
-        for (int x = 0; x < bitmap.getWidth(); ++x) {
-            for (int y = 0; y < bitmap.getHeight(); ++y) {
-                if (bitmap.getPixel(x, y) == Color.BLACK) {
+        for (int x = 0; x < image.getWidth(); ++x) {
+            for (int y = 0; y < image.getHeight(); ++y) {
+                if (image.get(x, y)) {
                     // Get the first column
                     if (xFirst == 0)
                         xFirst = x;
@@ -692,8 +1220,8 @@ public class Preprocessor {
 
         // Get the row range
         for (int x = xFirst; x < xLast; ++x) {
-            for (int y = 0; y < bitmap.getHeight(); ++y) {
-                if (bitmap.getPixel(x, y) == Color.BLACK) {
+            for (int y = 0; y < image.getHeight(); ++y) {
+                if (image.get(x, y)) {
                     // Find the top-most black pixel
                     if (y < yFirst)
                         yFirst = y;
@@ -717,29 +1245,46 @@ public class Preprocessor {
         int w = xLast - xFirst;
         int h = yLast - yFirst;
 
-        // Create the bitmap
-        bitmap = Bitmap.createBitmap(bitmap, x, y, w, h);
+        // A view of the cropped region (nothing is copied)
+        return image.view(x, y, w, h);
+    }
 
-        return bitmap;
+    /**
+     * Attempt to parse characters out of the binary image
+     * @param image The image to be examined
+     * @return A list of characters, each representing an
+     * unidentified Character
+     */
+    public static List<Character> segmentCharacters(BinaryImage image) {
+        return segmentCharacters(image, PROJECTION);
     }
 
     /**
-     * Attempt to parse characters out of the bitmap image
-     * @param bitmap The bitmap to be examined
-     * @return A list of bitmaps, each representing an
+     * Attempt to parse characters out of the binary image
+     * @param image The image to be examined
+     * @param strategy PROJECTION or COMPONENTS
+     * @return A list of characters, each representing an
      * unidentified Character
      */
-    public static List<Character> segmentCharacters(Bitmap bitmap) {
+    public static List<Character> segmentCharacters(BinaryImage image, int strategy) {
         // Get the initial set of segments, and keep track of their sizes
         List<Character> characters = new ArrayList<>();
         List<Float> segmentSizes = new ArrayList<>();
 
+        // Connected components already separate characters that share
+        // columns. Characters that touch are still one component, so the
+        // components go through the same oversize check as the projection
+        if (strategy == COMPONENTS)
+            characters = componentSegmentation(image);
+
         // Attempt preliminary segmentation
-        try {
-            characters = preliminarySegmentation(bitmap);
-        } catch (IllegalArgumentException iae){
-            Log.e(LOG_TAG, "Error: Unable to segment image.");
-            iae.printStackTrace();
+        else {
+            try {
+                characters = preliminarySegmentation(image);
+            } catch (IllegalArgumentException iae){
+                Log.e(LOG_TAG, "Error: Unable to segment image.");
+                iae.printStackTrace();
+            }
         }
 
         // Variables we will use in order to track the average segment size
@@ -763,6 +1308,14 @@ public class Preprocessor {
         if (DETAILED_LOGGING)
             Log.i(LOG_TAG, "Average segment size:    " + averageSegmentSize + '\n');
 
+        // The typical width of a single character: the median is used, since the
+        // average is thrown off by the very segments that hold several characters
+        List<Integer> widths = new ArrayList<>();
+        for (Character character : characters)
+            widths.add(character.getImage().getWidth());
+        Collections.sort(widths);
+        float medianWidth = widths.isEmpty() ? 0 : widths.get(widths.size() / 2);
+
         // What constitutes an "unusually big" segment size?
         float sizeThreshold = (float)(averageSegmentSize * 1.75);
         if (DETAILED_LOGGING)
@@ -771,19 +1324,30 @@ public class Preprocessor {
         // Are any of the segments unusually big? If so, the segment
         // probably contains more than one character
         for (int i = 0; i < segmentSizes.size(); ++i) {
+            // The path splitter goes by width alone: a segment that is big only
+            // because it is tall is still a single character, while characters
+            // that run into each other make a segment wide but not necessarily big
+            int pieces = Math.round(characters.get(i).getImage().getWidth() / medianWidth);
+            boolean oversized = SPLITTER == PATH_SPLIT ? pieces >= 2 : segmentSizes.get(i) > sizeThreshold;
+
             // If an unusually big segment is detected, we pass it off to
-            // be precision-segmented, and update the list of characters
-            // with the newly-returned sub-segments
-            if (segmentSizes.get(i) > sizeThreshold) {
+            // be split up, and update the list of characters with the
+            // newly-returned sub-segments
+            if (oversized) {
                 if (DETAILED_LOGGING)
                     Log.e(LOG_TAG, "The size of segment " + (i + 1) + " is " + segmentSizes.get(i));
 
-                // Perform precision segmentation on the large segment
-                List <Character> segmentedCharacters = precisionSegmentation(characters.get(i).getBitmap());
+                // Perform precision segmentation on the large segment, or cut it into as
+                // many pieces as there are median segment widths in it
+                List <Character> segmentedCharacters;
+                if (SPLITTER == PATH_SPLIT)
+                    segmentedCharacters = pathSegmentation(characters.get(i).getImage(), pieces);
+                else
+                    segmentedCharacters = precisionSegmentation(characters.get(i).getImage());
 
                 // Detect unsuccessful precision segmentation
                 if (segmentedCharacters.isEmpty()) {
-                    Log.e(LOG_TAG, "Error: precision segmentation failed");
+                    Log.e(LOG_TAG, "Error: " + (SPLITTER == PATH_SPLIT ? "path" : "precision") + " segmentation failed");
                     continue;
                 }
 
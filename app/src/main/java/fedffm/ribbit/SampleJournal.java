@@ -0,0 +1,278 @@
+package fedffm.ribbit;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only log of the samples that were learned while the app was
+ * running (see CharacterBase.addNewCharacter()), so that they survive the
+ * process being killed.
+ *
+ * Layout (big-endian):
+ *   int   MAGIC
+ *   int   SamplePack.VERSION
+ *   int   generation
+ *   then one record per sample:
+ *   int   length of the sample
+ *   int   CRC32 of the sample
+ *   the sample, laid out as in a SamplePack
+ *
+ * Records are written as soon as they're appended, but only synced to disk
+ * every SYNC_EVERY records, or on sync(). Whatever is left unsynced is synced
+ * by a timer every SYNC_INTERVAL_NANOSECONDS, even if nothing else is ever
+ * appended. A
+ * record that was cut short, or doesn't match its CRC, ends the log: it and
+ * anything after it are cut off when the log is opened again.
+ *
+ * Every so often the learned samples are folded into the SamplePack, which
+ * records the journal's generation; the journal then starts over with the next
+ * generation. A journal whose generation is no newer than the pack's has
+ * already been folded in (the app stopped between writing the pack and
+ * starting over), and is thrown away rather than replayed twice
+ */
+public class SampleJournal {
+    public static final String FILE_NAME = "learned.journal";
+    private static final String LOG_TAG  = "SampleJournal";
+
+    // "RBJL"
+    private static final int MAGIC        = 0x52424A4C;
+    private static final int HEADER_BYTES = 12;
+
+    // Sync after this many records, or once this much time has passed since
+    // the last sync, whichever comes first
+    private static final int  SYNC_EVERY                = 16;
+    private static final long SYNC_INTERVAL_NANOSECONDS = 2000000000L;
+
+    // The one thread that runs every open journal's timed sync
+    private static final ScheduledExecutorService SYNCER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SampleJournal-sync");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private File             file;
+    private FileOutputStream out;
+    private int              generation;
+    private List<Character>  replayed;
+    private int              records;
+    private int              unsynced;
+    private long             lastSync;
+    private ScheduledFuture<?> timedSync;
+
+    private SampleJournal(File file, int generation, List<Character> replayed) throws IOException {
+        this.file       = file;
+        this.generation = generation;
+        this.replayed   = replayed;
+        this.records    = replayed.size();
+        this.out        = new FileOutputStream(file, true);
+        this.lastSync   = System.nanoTime();
+        this.timedSync  = SYNCER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                syncIfDue();
+            }
+        }, SYNC_INTERVAL_NANOSECONDS, SYNC_INTERVAL_NANOSECONDS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Open the journal and read back every whole record in it, or start a new
+     * one if there is none (or it can't be used)
+     * @param file Where the journal lives
+     * @param packGeneration The generation of the SamplePack that was loaded
+     * @return The journal, ready to append to
+     * @throws IOException If a new journal can't be written
+     */
+    public static SampleJournal open(File file, int packGeneration) throws IOException {
+        List<Character> replayed = new ArrayList<>();
+
+        if (file.exists()) {
+            try {
+                RandomAccessFile journal = new RandomAccessFile(file, "rw");
+                try {
+                    FileChannel channel = journal.getChannel();
+                    ByteBuffer  buffer  = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                    if (channel.size() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != SamplePack.VERSION)
+                        throw new IOException("Not a journal, or out of date");
+
+                    int generation = buffer.getInt();
+                    if (generation > packGeneration) {
+                        long end = replay(buffer, replayed);
+
+                        // Cut off whatever was half written when the app stopped
+                        if (end < channel.size()) {
+                            Log.w(LOG_TAG, "Cutting off " + (channel.size() - end) + " bytes at the end of the journal");
+                            channel.truncate(end);
+                            channel.force(true);
+                        }
+                        return new SampleJournal(file, generation, replayed);
+                    }
+                } finally {
+                    journal.close();
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Starting a new journal: " + e.getMessage());
+            }
+        }
+
+        // Either there's no journal, or it has already been folded into the pack
+        start(file, packGeneration + 1);
+        return new SampleJournal(file, packGeneration + 1, new ArrayList<Character>());
+    }
+
+    /**
+     * Read every whole record, from where the buffer is up to its limit
+     * @param buffer The records
+     * @param replayed Filled with the samples
+     * @return Where the last whole record ends
+     */
+    private static long replay(ByteBuffer buffer, List<Character> replayed) {
+        while (buffer.remaining() >= 8) {
+            int start  = buffer.position();
+            int length = buffer.getInt();
+            int crc    = buffer.getInt();
+
+            if (length <= 0 || length > buffer.remaining())
+                return start;
+
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            if (SamplePack.crc(record.duplicate()) != crc)
+                return start;
+
+            try {
+                replayed.add(SamplePack.readSample(record));
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                return start;
+            }
+            buffer.position(start + 8 + length);
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Write a journal with no records in it yet, next to the old one, and then
+     * rename it over the old one
+     */
+    private static void start(File file, int generation) throws IOException {
+        File             temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream out       = new FileOutputStream(temporary);
+        try {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(SamplePack.VERSION);
+            header.writeInt(generation);
+            header.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        if (!temporary.renameTo(file))
+            throw new IOException("Couldn't rename " + temporary + " to " + file);
+    }
+
+    // Getters
+    public synchronized List<Character> getReplayed()   {return this.replayed;}
+    public synchronized int             getGeneration() {return this.generation;}
+    public synchronized int             size()          {return this.records;}
+
+    /**
+     * Add a learned sample to the end of the journal
+     * @param character The sample (with a name, an image and its classes)
+     * @throws IOException
+     */
+    public synchronized void append(Character character) throws IOException {
+        ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+        DataOutputStream      record = new DataOutputStream(bytes);
+        SamplePack.writeSample(record, character);
+        record.flush();
+
+        byte[]                sample = bytes.toByteArray();
+        ByteArrayOutputStream entry  = new ByteArrayOutputStream(sample.length + 8);
+        DataOutputStream      header = new DataOutputStream(entry);
+        header.writeInt(sample.length);
+        header.writeInt(SamplePack.crc(ByteBuffer.wrap(sample)));
+        header.write(sample);
+        header.flush();
+
+        // One write per record, so a record is either there or cut short
+        out.write(entry.toByteArray());
+        records++;
+
+        if (++unsynced >= SYNC_EVERY || System.nanoTime() - lastSync >= SYNC_INTERVAL_NANOSECONDS)
+            sync();
+    }
+
+    /**
+     * Make sure that every record appended so far is on disk
+     * @throws IOException
+     */
+    public synchronized void sync() throws IOException {
+        if (unsynced == 0)
+            return;
+        out.getFD().sync();
+        unsynced = 0;
+        lastSync = System.nanoTime();
+    }
+
+    // Sync on the timer, unless an append or sync() has done it recently
+    private synchronized void syncIfDue() {
+        if (System.nanoTime() - lastSync < SYNC_INTERVAL_NANOSECONDS)
+            return;
+
+        try {
+            sync();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't sync the journal", e);
+        }
+    }
+
+    /**
+     * Start over with the next generation, once every learned sample has been
+     * folded into a SamplePack of this generation
+     * @throws IOException
+     */
+    public synchronized void reset() throws IOException {
+        out.close();
+        start(file, generation + 1);
+
+        this.generation += 1;
+        this.replayed    = new ArrayList<>();
+        this.records     = 0;
+        this.unsynced    = 0;
+        this.out         = new FileOutputStream(file, true);
+    }
+
+    /**
+     * Sync and close the journal
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        timedSync.cancel(false);
+        try {
+            sync();
+        } finally {
+            out.close();
+        }
+    }
+}
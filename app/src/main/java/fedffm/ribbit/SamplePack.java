@@ -0,0 +1,184 @@
+package fedffm.ribbit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The sample characters compiled into one file, so that the CharacterBase can
+ * start without decoding (or classifying) a single image. Each sample keeps its
+ * name, its packed pixels and the classes it ended up with once the feature
+ * classes were balanced.
+ *
+ * Layout (big-endian):
+ *   int   MAGIC
+ *   int   VERSION
+ *   int   generation (the last SampleJournal generation folded into the pack)
+ *   int   number of samples
+ *   int   CRC32 of everything after this header
+ *   then for each sample:
+ *   char  name
+ *   short width, short height
+ *   byte  ratio class, byte feature class
+ *   long  the pixels, row by row, (width + 63) / 64 words to a row (see BinaryImage.word())
+ *
+ * A pack that doesn't match in any way is refused with an IOException, and the
+ * samples are loaded from the images instead
+ */
+public class SamplePack {
+    public static final String FILE_NAME = "samples.pack";
+
+    // "RBPK"
+    private static final int MAGIC = 0x5242504B;
+
+    // Bump this whenever the sample images, BinaryImage.fromBitmap(), the
+    // Classifier, the balancing or the layout change, so that an old pack is
+    // rebuilt rather than trusted. The bundled pack has to be compiled again
+    // then too (see SamplePackCompiler)
+    public static final int VERSION = 2;
+
+    private List<Character> characters;
+    private int             generation;
+
+    // Non-default
+    public SamplePack(List<Character> characters, int generation) {
+        this.characters = characters;
+        this.generation = generation;
+    }
+
+    // Getters
+    public List<Character> getCharacters() {return this.characters;}
+    public int             getGeneration() {return this.generation;}
+
+    /**
+     * Compile the samples into a pack
+     * @param out Where to write the pack (left open)
+     * @throws IOException
+     */
+    public void write(OutputStream out) throws IOException {
+        ByteArrayOutputStream bytes   = new ByteArrayOutputStream();
+        DataOutputStream      payload = new DataOutputStream(bytes);
+
+        for (Character character : characters)
+            writeSample(payload, character);
+        payload.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(generation);
+        header.writeInt(characters.size());
+        header.writeInt((int)crc.getValue());
+        bytes.writeTo(header);
+        header.flush();
+    }
+
+    /**
+     * Read a pack in full from a stream (such as an asset)
+     * @param in The pack (left open)
+     * @return The pack, with its samples in the order they were written
+     * @throws IOException If the pack can't be read, or doesn't match
+     */
+    public static SamplePack read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+        byte[]                buffer = new byte[8192];
+        for (int n = in.read(buffer); n > 0; n = in.read(buffer))
+            bytes.write(buffer, 0, n);
+        return read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Read a pack (such as a file mapped into memory)
+     * @param buffer The pack, from its first byte up to its limit
+     * @return The pack, with its samples in the order they were written
+     * @throws IOException If the pack doesn't match
+     */
+    public static SamplePack read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a sample pack");
+            if (buffer.getInt() != VERSION)
+                throw new IOException("Sample pack is out of date");
+            int generation = buffer.getInt();
+            int count      = buffer.getInt();
+            int expected   = buffer.getInt();
+
+            // Check the whole pack before trusting any of it
+            if (crc(buffer.slice()) != expected)
+                throw new IOException("Sample pack is corrupt");
+
+            List<Character> characters = new ArrayList<>(count);
+            for (int c = 0; c < count; ++c)
+                characters.add(readSample(buffer));
+
+            if (buffer.hasRemaining())
+                throw new IOException("Sample pack has " + buffer.remaining() + " bytes left over");
+            return new SamplePack(characters, generation);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Sample pack is truncated or malformed", e);
+        }
+    }
+
+    /**
+     * The CRC32 of the bytes left in a buffer (which are used up)
+     */
+    static int crc(ByteBuffer buffer) {
+        CRC32  crc   = new CRC32();
+        byte[] chunk = new byte[8192];
+        while (buffer.hasRemaining()) {
+            int n = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Write one sample, as laid out above (the SampleJournal uses the same layout)
+     */
+    static void writeSample(DataOutputStream out, Character character) throws IOException {
+        BinaryImage image = character.getImage();
+        out.writeChar(character.getName());
+        out.writeShort(image.getWidth());
+        out.writeShort(image.getHeight());
+        out.writeByte(character.getRatioClass());
+        out.writeByte(character.getFeatureClass());
+
+        for (int y = 0; y < image.getHeight(); ++y)
+            for (int i = 0; i < image.getWordsPerRow(); ++i)
+                out.writeLong(image.word(y, i));
+    }
+
+    /**
+     * Read back one sample written by writeSample()
+     * @throws BufferUnderflowException If the buffer ends part way through
+     * @throws IllegalArgumentException If the dimensions make no sense
+     */
+    static Character readSample(ByteBuffer buffer) {
+        char name         = buffer.getChar();
+        int  width        = buffer.getShort();
+        int  height       = buffer.getShort();
+        int  ratioClass   = buffer.get();
+        int  featureClass = buffer.get();
+
+        BinaryImage image = new BinaryImage(width, height);
+        for (int y = 0; y < height; ++y)
+            for (int i = 0; i < image.getWordsPerRow(); ++i)
+                image.setWord(y, i, buffer.getLong());
+
+        Character character = new Character(image, ratioClass, featureClass);
+        character.setName(name);
+        character.setAscii((int)name);
+        return character;
+    }
+}
@@ -0,0 +1,138 @@
+package fedffm.ribbit;
+
+/**
+ * A run of samples that sit next to each other in a LetterSamples (see
+ * LetterSamples.range()). Samples are numbered 0 through size() - 1 within
+ * the range. A range only reads the arrays that it shares with its
+ * LetterSamples, and those never change
+ */
+public class SampleRange {
+    private Character[] samples;
+    private long[][]    templates;
+    private int[][]     ink;
+    private int[]       bandInk;
+    private float[]     descriptors;
+    private short[]     edges;
+    private int[]       edgeStart;
+    private byte[]      distances;
+    private int         start;
+    private int         end;
+
+    // Non-default
+    SampleRange(LetterSamples letter, int start, int end) {
+        this.samples   = letter.samples;
+        this.templates = letter.templates;
+        this.ink       = letter.ink;
+        this.bandInk   = letter.bandInk;
+        this.descriptors = letter.descriptors;
+        this.edges     = letter.edges;
+        this.edgeStart = letter.edgeStart;
+        this.distances = letter.distances;
+        this.start     = start;
+        this.end       = end;
+    }
+
+    // Getters
+    public int       size()           {return this.end - this.start;}
+    public Character getSample(int k) {return this.samples[start + k];}
+    public int       getInk(int k)    {return this.ink[Template.LEVELS - 1][start + k];}
+
+    /**
+     * How much ink does a sample have at one of its template's levels?
+     * @param k The sample
+     * @param level The level (0 is the smallest)
+     * @return The number of black pixels
+     */
+    public int getInk(int k, int level) {return this.ink[level][start + k];}
+
+    /**
+     * How many black pixels does a sample share with an unknown template?
+     * @param k The sample
+     * @param unknown The unknown character's template
+     * @return The number of pixels that are black in both
+     */
+    public int overlap(int k, Template unknown) {
+        return overlap(k, unknown, Template.LEVELS - 1);
+    }
+
+    /**
+     * How many black pixels does a sample share with an unknown template, at
+     * one of the template's levels?
+     * @param k The sample
+     * @param unknown The unknown character's template
+     * @param level The level (0 is the smallest)
+     * @return The number of pixels that are black in both
+     */
+    public int overlap(int k, Template unknown, int level) {
+        long[] words  = unknown.getWords(level);
+        long[] sample = templates[level];
+        int    base   = (start + k) * words.length;
+        int    count  = 0;
+
+        for (int i = 0; i < words.length; ++i)
+            count += Long.bitCount(sample[base + i] & words[i]);
+        return count;
+    }
+
+    /**
+     * How far apart are the outlines of a sample and an unknown template? The
+     * same measure as Template.chamfer(), read from the sample's precomputed
+     * edges and distances
+     * @param k The sample
+     * @param unknown The unknown character's template
+     * @return The average distance, in steps of Template.STEP
+     */
+    public float chamfer(int k, Template unknown) {
+        short[] unknownEdges     = unknown.getEdges();
+        byte[]  unknownDistances = unknown.getDistances();
+        int     first            = edgeStart[start + k];
+        int     last             = edgeStart[start + k + 1];
+        int     base             = (start + k) * unknownDistances.length;
+
+        if (first == last || unknownEdges.length == 0)
+            return Template.FAR;
+
+        int sum = 0;
+        for (short edge : unknownEdges)
+            sum += distances[base + edge];
+        for (int i = first; i < last; ++i)
+            sum += unknownDistances[edges[i]];
+        return (float)sum / (unknownEdges.length + last - first);
+    }
+
+    /**
+     * How far apart are the descriptors of a sample and an unknown character?
+     * The same measure as Descriptor.distance(), read from the sample's
+     * packed descriptor
+     * @param k The sample
+     * @param unknown The unknown character's descriptor
+     * @return 0 for identical descriptors, larger the more they differ
+     */
+    public float descriptorDistance(int k, float[] unknown) {
+        int   base = (start + k) * Descriptor.LENGTH;
+        float sum  = 0;
+
+        for (int i = 0; i < Descriptor.HU_MOMENTS; ++i) {
+            float d = descriptors[base + i] - unknown[i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * The most black pixels that a sample could share with an unknown
+     * template, judging only by how much ink each has in each band of rows.
+     * Never less than overlap(), and a fraction of the cost
+     * @param k The sample
+     * @param unknown The unknown character's template
+     * @return An upper bound on overlap(k, unknown)
+     */
+    public int overlapBound(int k, Template unknown) {
+        int base  = (start + k) * Template.BANDS;
+        int count = 0;
+
+        for (int b = 0; b < Template.BANDS; ++b)
+            count += Math.min(bandInk[base + b], unknown.getBandInk(b));
+        return count;
+    }
+}
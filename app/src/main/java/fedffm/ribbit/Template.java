@@ -0,0 +1,237 @@
+package fedffm.ribbit;
+
+import java.util.Arrays;
+
+/**
+ * A character stretched (or shrunk) to a fixed SIZE x SIZE grid and packed one
+ * bit per pixel, SIZE bits to a row, so that two characters of any size can be
+ * compared a word at a time: 64 pixels per AND and Long.bitCount().
+ *
+ * Every pixel of the template covers a small rectangle of the character's
+ * image, and is black if any pixel in that rectangle is black. Shrinking a
+ * character that way keeps its thin strokes from disappearing between samples.
+ *
+ * The template is kept at LEVELS resolutions, each half the size of the next
+ * (8 x 8, 16 x 16 and 32 x 32), for comparisons that only need a rough answer.
+ * Level LEVELS - 1 is the full template; a pixel of a smaller level is black
+ * if any of the four pixels that it covers on the next level is black.
+ *
+ * The template also knows its edges (the black pixels next to a white one, or
+ * to the border) and how far every pixel is from the nearest edge, as a 3-4
+ * chamfer distance: 3 per step across, 4 per step diagonally. Two templates
+ * can then be compared by looking up each one's edges in the other's distances
+ * (see chamfer()), which forgives a stroke that is off by a pixel
+ */
+public class Template {
+    public static final int SIZE  = 32;
+    public static final int WORDS = SIZE * SIZE / 64;
+
+    // The template is also split into BANDS bands of rows, and the ink in
+    // each band is counted (see SampleRange.overlapBound())
+    public static final int BANDS = 4;
+
+    public static final int LEVELS = 3;
+
+    // The chamfer distance of one step across, and the largest distance kept
+    public static final int STEP = 3;
+    public static final int FAR  = Byte.MAX_VALUE;
+
+    // Rows per word
+    private static final int ROWS_PER_WORD = 64 / SIZE;
+
+    private long[] words;
+    private int    ink;
+    private int[]  bandInk;
+
+    // The smaller levels, and their ink
+    private long[][] levelWords;
+    private int[]    levelInk;
+
+    // The edge pixels (as y * SIZE + x), and every pixel's distance to the
+    // nearest of them
+    private short[]  edges;
+    private byte[]   distances;
+
+    // Non-default
+    public Template(BinaryImage image) {
+        int width  = image.getWidth();
+        int height = image.getHeight();
+        this.words = new long[WORDS];
+
+        for (int ty = 0; ty < SIZE; ++ty) {
+            // The rows of the image that this row of the template covers
+            int y0 = ty * height / SIZE;
+            int y1 = Math.max(y0 + 1, (ty + 1) * height / SIZE);
+
+            for (int tx = 0; tx < SIZE; ++tx) {
+                // ...and the columns
+                int x0 = tx * width / SIZE;
+                int x1 = Math.max(x0 + 1, (tx + 1) * width / SIZE);
+
+                for (int y = y0; y < y1; ++y) {
+                    if (image.countRow(y, x0, x1) > 0) {
+                        words[ty / ROWS_PER_WORD] |= 1L << ((ty % ROWS_PER_WORD) * SIZE + tx);
+                        break;
+                    }
+                }
+            }
+        }
+
+        this.bandInk = new int[BANDS];
+        for (int i = 0; i < WORDS; ++i)
+            bandInk[i * BANDS / WORDS] += Long.bitCount(words[i]);
+        for (int band : bandInk)
+            ink += band;
+
+        this.levelWords = new long[LEVELS][];
+        this.levelInk   = new int[LEVELS];
+        levelWords[LEVELS - 1] = words;
+        levelInk[LEVELS - 1]   = ink;
+
+        for (int level = LEVELS - 2; level >= 0; --level) {
+            int    size  = levelSize(level);
+            long[] finer = levelWords[level + 1];
+            levelWords[level] = new long[levelWords(level)];
+
+            for (int y = 0; y < size; ++y)
+                for (int x = 0; x < size; ++x)
+                    if (isBlack(finer, 2 * size, 2 * x, 2 * y)     || isBlack(finer, 2 * size, 2 * x + 1, 2 * y) ||
+                        isBlack(finer, 2 * size, 2 * x, 2 * y + 1) || isBlack(finer, 2 * size, 2 * x + 1, 2 * y + 1))
+                        levelWords[level][(y * size + x) >>> 6] |= 1L << (y * size + x);
+
+            for (long word : levelWords[level])
+                levelInk[level] += Long.bitCount(word);
+        }
+
+        this.edges     = edges(words);
+        this.distances = distances(edges);
+    }
+
+    // The black pixels that have a white pixel (or the border) above, below,
+    // left or right of them
+    private static short[] edges(long[] words) {
+        short[] found = new short[SIZE * SIZE];
+        int     count = 0;
+
+        for (int y = 0; y < SIZE; ++y)
+            for (int x = 0; x < SIZE; ++x)
+                if (isBlack(words, SIZE, x, y) &&
+                    (x == 0        || !isBlack(words, SIZE, x - 1, y) ||
+                     x == SIZE - 1 || !isBlack(words, SIZE, x + 1, y) ||
+                     y == 0        || !isBlack(words, SIZE, x, y - 1) ||
+                     y == SIZE - 1 || !isBlack(words, SIZE, x, y + 1)))
+                    found[count++] = (short)(y * SIZE + x);
+
+        short[] edges = new short[count];
+        System.arraycopy(found, 0, edges, 0, count);
+        return edges;
+    }
+
+    // The chamfer distance from every pixel to the nearest edge, in two
+    // passes: one from the top left that looks up and left, and one from the
+    // bottom right that looks down and right
+    private static byte[] distances(short[] edges) {
+        int[] d = new int[SIZE * SIZE];
+        Arrays.fill(d, FAR);
+        for (short edge : edges)
+            d[edge] = 0;
+
+        for (int y = 0; y < SIZE; ++y)
+            for (int x = 0; x < SIZE; ++x) {
+                int i = y * SIZE + x;
+                if (x > 0)                 d[i] = Math.min(d[i], d[i - 1] + STEP);
+                if (y > 0)                 d[i] = Math.min(d[i], d[i - SIZE] + STEP);
+                if (x > 0 && y > 0)        d[i] = Math.min(d[i], d[i - SIZE - 1] + STEP + 1);
+                if (x < SIZE - 1 && y > 0) d[i] = Math.min(d[i], d[i - SIZE + 1] + STEP + 1);
+            }
+
+        for (int y = SIZE - 1; y >= 0; --y)
+            for (int x = SIZE - 1; x >= 0; --x) {
+                int i = y * SIZE + x;
+                if (x < SIZE - 1)                 d[i] = Math.min(d[i], d[i + 1] + STEP);
+                if (y < SIZE - 1)                 d[i] = Math.min(d[i], d[i + SIZE] + STEP);
+                if (x < SIZE - 1 && y < SIZE - 1) d[i] = Math.min(d[i], d[i + SIZE + 1] + STEP + 1);
+                if (x > 0 && y < SIZE - 1)        d[i] = Math.min(d[i], d[i + SIZE - 1] + STEP + 1);
+            }
+
+        byte[] distances = new byte[SIZE * SIZE];
+        for (int i = 0; i < distances.length; ++i)
+            distances[i] = (byte)Math.min(d[i], FAR);
+        return distances;
+    }
+
+    // Pixel (x, y) of a level that is size pixels wide
+    private static boolean isBlack(long[] words, int size, int x, int y) {
+        return (words[(y * size + x) >>> 6] & (1L << (y * size + x))) != 0;
+    }
+
+    /**
+     * How wide (and tall) is a level?
+     * @param level The level (0 is the smallest)
+     * @return The size in pixels
+     */
+    public static int levelSize(int level) {return SIZE >> (LEVELS - 1 - level);}
+
+    /**
+     * How many words does a level take up?
+     * @param level The level (0 is the smallest)
+     * @return The number of words
+     */
+    public static int levelWords(int level) {return (levelSize(level) * levelSize(level) + 63) >>> 6;}
+
+    // Getters
+    public long[] getWords()        {return this.words;}
+    public int    getInk()          {return this.ink;}
+    public int    getBandInk(int b) {return this.bandInk[b];}
+
+    // Getters for a level (0 is the smallest)
+    public long[] getWords(int level) {return this.levelWords[level];}
+    public int    getInk(int level)   {return this.levelInk[level];}
+
+    // Getters for the edges and their distances
+    public short[] getEdges()     {return this.edges;}
+    public byte[]  getDistances() {return this.distances;}
+
+    /**
+     * How many black pixels do two templates have in common?
+     * @param other The other template
+     * @return The number of pixels that are black in both
+     */
+    public int overlap(Template other) {
+        int count = 0;
+        for (int i = 0; i < WORDS; ++i)
+            count += Long.bitCount(words[i] & other.words[i]);
+        return count;
+    }
+
+    /**
+     * How far apart are the outlines of two templates? Each template's edges
+     * are looked up in the other's distances, both ways so that a template
+     * with a lot of ink isn't close to everything
+     * @param other The other template
+     * @return The average distance, in steps of STEP (FAR if either has no edges)
+     */
+    public float chamfer(Template other) {
+        if (edges.length == 0 || other.edges.length == 0)
+            return FAR;
+
+        int sum = 0;
+        for (short edge : edges)
+            sum += other.distances[edge];
+        for (short edge : other.edges)
+            sum += distances[edge];
+        return (float)sum / (edges.length + other.edges.length);
+    }
+
+    /**
+     * How many pixels differ between two templates?
+     * @param other The other template
+     * @return The number of pixels that are black in one and white in the other
+     */
+    public int difference(Template other) {
+        int count = 0;
+        for (int i = 0; i < WORDS; ++i)
+            count += Long.bitCount(words[i] ^ other.words[i]);
+        return count;
+    }
+}
@@ -0,0 +1,126 @@
+package fedffm.ribbit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryImageTest {
+    // A pattern with no period that lines up with a word
+    private static BinaryImage pattern(int width, int height) {
+        BinaryImage image = new BinaryImage(width, height);
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x)
+                if ((x * 7 + y * 13) % 5 < 2 || x % 29 == 0)
+                    image.set(x, y);
+        return image;
+    }
+
+    // Every pixel that word() reports must match get(), and nothing past the width
+    private static void assertWordsMatchPixels(BinaryImage image) {
+        for (int y = 0; y < image.getHeight(); ++y) {
+            for (int i = 0; i < image.getWordsPerRow(); ++i) {
+                long word = image.word(y, i);
+                for (int b = 0; b < 64; ++b) {
+                    int     x     = i * 64 + b;
+                    boolean black = (word & (1L << b)) != 0;
+                    if (x < image.getWidth())
+                        assertEquals("pixel (" + x + ", " + y + ")", image.get(x, y), black);
+                    else
+                        assertFalse("bit past the width at (" + x + ", " + y + ")", black);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void wordMatchesPixels() {
+        assertWordsMatchPixels(pattern(200, 5));
+    }
+
+    @Test
+    public void wordOnUnalignedViews() {
+        BinaryImage image = pattern(200, 6);
+
+        // Offsets on either side of a word boundary, widths that end part way
+        // through a word, on a word boundary, and spanning several words
+        int[] offsets = {1, 13, 63, 64, 65, 100};
+        int[] widths  = {1, 17, 64, 65, 99};
+        for (int x : offsets) {
+            for (int w : widths) {
+                if (x + w > image.getWidth())
+                    continue;
+
+                BinaryImage view = image.view(x, 1, w, 4);
+                assertEquals((w + 63) / 64, view.getWordsPerRow());
+                for (int y = 0; y < view.getHeight(); ++y)
+                    for (int vx = 0; vx < w; ++vx)
+                        assertEquals(image.get(x + vx, y + 1), view.get(vx, y));
+                assertWordsMatchPixels(view);
+            }
+        }
+    }
+
+    @Test
+    public void wordOnLastWordOfTheRow() {
+        // A view that ends at the right edge of the image, so there is no
+        // next word to pull pixels from
+        BinaryImage image = new BinaryImage(128, 1);
+        for (int x = 0; x < 128; ++x)
+            image.set(x, 0);
+
+        BinaryImage view = image.view(70, 0, 58, 1);
+        assertEquals((1L << 58) - 1, view.word(0, 0));
+    }
+
+    @Test
+    public void viewOfAView() {
+        BinaryImage image = pattern(200, 3);
+        BinaryImage view  = image.view(10, 0, 150, 3).view(57, 1, 80, 2);
+        for (int y = 0; y < 2; ++y)
+            for (int x = 0; x < 80; ++x)
+                assertEquals(image.get(67 + x, y + 1), view.get(x, y));
+        assertWordsMatchPixels(view);
+    }
+
+    @Test
+    public void copyLinesUpAtColumnZero() {
+        BinaryImage image = pattern(150, 4);
+        BinaryImage crop  = image.crop(37, 1, 90, 3);
+        for (int y = 0; y < 3; ++y)
+            for (int x = 0; x < 90; ++x)
+                assertEquals(image.get(37 + x, y + 1), crop.get(x, y));
+        assertWordsMatchPixels(crop);
+        assertEquals(image.view(37, 1, 90, 3).count(), crop.count());
+    }
+
+    @Test
+    public void countRowOfAView() {
+        BinaryImage image = pattern(200, 2);
+        BinaryImage view  = image.view(33, 0, 140, 2);
+        for (int x0 = 0; x0 < 140; x0 += 23) {
+            for (int x1 = x0 + 1; x1 <= 140; x1 += 31) {
+                int expected = 0;
+                for (int x = x0; x < x1; ++x)
+                    if (view.get(x, 1))
+                        expected++;
+                assertEquals(expected, view.countRow(1, x0, x1));
+            }
+        }
+    }
+
+    @Test
+    public void setAndClearThroughAView() {
+        BinaryImage image = new BinaryImage(100, 2);
+        BinaryImage view  = image.view(60, 1, 30, 1);
+
+        view.set(5, 0);
+        assertTrue(image.get(65, 1));
+        assertEquals(1L << 5, view.word(0, 0));
+
+        view.clear(5, 0);
+        assertFalse(image.get(65, 1));
+        assertEquals(0, image.count());
+    }
+}
@@ -0,0 +1,60 @@
+package fedffm.ribbit;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BitSlicedSamplesTest {
+    private static BinaryImage noise(Random random, int width, int height, int oneIn) {
+        BinaryImage image = new BinaryImage(width, height);
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x)
+                if (random.nextInt(oneIn) == 0)
+                    image.set(x, y);
+        return image;
+    }
+
+    private static void assertSameOverlaps(SampleRange range, Template unknown) {
+        int[] overlaps = new int[BitSlicedSamples.LANES];
+        for (int first = 0; first < range.size(); first += BitSlicedSamples.LANES) {
+            BitSlicedSamples block = new BitSlicedSamples(range, first);
+            assertEquals(Math.min(BitSlicedSamples.LANES, range.size() - first), block.size());
+
+            block.overlaps(unknown, overlaps);
+            for (int s = 0; s < block.size(); ++s)
+                assertEquals("sample " + (first + s), range.overlap(first + s, unknown), overlaps[s]);
+        }
+    }
+
+    @Test
+    public void sameOverlapsAsOneAtATime() {
+        // More than one block's worth, of every density
+        Random          random  = new Random(16);
+        List<Character> samples = new ArrayList<>();
+        for (int i = 0; i < 150; ++i)
+            samples.add(new Character(noise(random, 10 + random.nextInt(30), 10 + random.nextInt(30), 1 + i % 4), 0, 0));
+        SampleRange range = new LetterSamples(samples).all();
+
+        for (int u = 0; u < 20; ++u)
+            assertSameOverlaps(range, new Template(noise(random, 10 + random.nextInt(30), 10 + random.nextInt(30), 1 + u % 4)));
+    }
+
+    @Test
+    public void fullTemplatesCountEveryPixel() {
+        // Every pixel black in all 64 samples and the unknown: the largest count there is
+        BinaryImage     black   = noise(new Random(0), 8, 8, 1);
+        List<Character> samples = new ArrayList<>();
+        for (int i = 0; i < BitSlicedSamples.LANES; ++i)
+            samples.add(new Character(black, 0, 0));
+        SampleRange range = new LetterSamples(samples).all();
+
+        int[] overlaps = new int[BitSlicedSamples.LANES];
+        new BitSlicedSamples(range, 0).overlaps(new Template(black), overlaps);
+        for (int overlap : overlaps)
+            assertEquals(Template.SIZE * Template.SIZE, overlap);
+    }
+}
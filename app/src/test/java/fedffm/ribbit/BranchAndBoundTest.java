@@ -0,0 +1,117 @@
+package fedffm.ribbit;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BranchAndBoundTest {
+    // Every synthetic sample and unknown is in the same classes, so that they're all compared
+    private static Character glyph(char name, BinaryImage image) {
+        Character character = new Character(image, 0, 0);
+        character.setName(name);
+        character.setAscii((int)name);
+        return character;
+    }
+
+    private static BinaryImage noise(Random random, int width, int height) {
+        BinaryImage image = new BinaryImage(width, height);
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x)
+                if (random.nextInt(3) == 0)
+                    image.set(x, y);
+        return image;
+    }
+
+    private static BinaryImage copy(BinaryImage source) {
+        BinaryImage image = new BinaryImage(source.getWidth(), source.getHeight());
+        for (int y = 0; y < source.getHeight(); ++y)
+            for (int x = 0; x < source.getWidth(); ++x)
+                if (source.get(x, y))
+                    image.set(x, y);
+        return image;
+    }
+
+    private static LetterSamples[] letters(List<List<Character>> samples) {
+        LetterSamples[] letters = new LetterSamples[samples.size()];
+        for (int l = 0; l < letters.length; ++l)
+            letters[l] = new LetterSamples(samples.get(l));
+        return letters;
+    }
+
+    private static char identify(BinaryImage image, LetterSamples[] letters, int mode, int k) {
+        return Identifier.identify(new Character(image, 0, 0), letters, mode, Identifier.OVERLAP, k,
+                                   Identifier.getPyramid(), Identifier.getShortlist()).getName();
+    }
+
+    private static void assertSameWinner(BinaryImage unknown, LetterSamples[] letters) {
+        char exhaustive = identify(unknown, letters, Identifier.EXHAUSTIVE, 1);
+        for (int k : new int[] {1, 3})
+            assertEquals("k = " + k, exhaustive, identify(unknown, letters, Identifier.BRANCH_AND_BOUND, k));
+    }
+
+    @Test
+    public void sameWinnerAsExhaustiveOnNoise() {
+        Random random = new Random(18);
+        List<List<Character>> samples = new ArrayList<>();
+        for (char name = 'a'; name <= 'z'; ++name) {
+            List<Character> letter = new ArrayList<>();
+            for (int i = 0; i < 4; ++i)
+                letter.add(glyph(name, noise(random, 12 + random.nextInt(20), 12 + random.nextInt(20))));
+            samples.add(letter);
+        }
+        LetterSamples[] letters = letters(samples);
+
+        for (int u = 0; u < 50; ++u)
+            assertSameWinner(noise(random, 12 + random.nextInt(20), 12 + random.nextInt(20)), letters);
+    }
+
+    @Test
+    public void tiesGoToTheEarlierLetter() {
+        Random      random = new Random(3);
+        BinaryImage shared = noise(random, 20, 24);
+
+        // 'c' and 'q' have a sample that matches the unknown exactly, the rest are noise
+        List<List<Character>> samples = new ArrayList<>();
+        for (char name = 'a'; name <= 'z'; ++name) {
+            List<Character> letter = new ArrayList<>();
+            letter.add(glyph(name, noise(random, 20, 24)));
+            if (name == 'c' || name == 'q')
+                letter.add(glyph(name, copy(shared)));
+            samples.add(letter);
+        }
+        LetterSamples[] letters = letters(samples);
+
+        assertEquals('c', identify(copy(shared), letters, Identifier.EXHAUSTIVE, 1));
+        assertSameWinner(copy(shared), letters);
+    }
+
+    @Test
+    public void sameWinnerAsExhaustiveOnTheBundledSamples() throws IOException {
+        List<Character> all = SamplePackCompiler.compile(SamplePackCompiler.ASSETS).getCharacters();
+
+        // Leave one sample out at a time (every seventh, to keep it quick)
+        for (int s = 0; s < all.size(); s += 7) {
+            List<List<Character>> samples = new ArrayList<>();
+            for (char name = 'a'; name <= 'z'; ++name)
+                samples.add(new ArrayList<Character>());
+            for (int i = 0; i < all.size(); ++i)
+                if (i != s)
+                    samples.get(all.get(i).getName() - 'a').add(all.get(i));
+
+            // Classified from its image, the way a captured glyph is
+            LetterSamples[] letters = letters(samples);
+            Character       unknown = new Character(all.get(s).getImage());
+            char            winner  = Identifier.identify(unknown, letters, Identifier.EXHAUSTIVE, Identifier.OVERLAP, 1,
+                                                          Identifier.getPyramid(), Identifier.getShortlist()).getName();
+            for (int k : new int[] {1, 3})
+                assertEquals("sample " + s + ", k = " + k, winner,
+                             Identifier.identify(unknown, letters, Identifier.BRANCH_AND_BOUND, Identifier.OVERLAP, k,
+                                                 Identifier.getPyramid(), Identifier.getShortlist()).getName());
+        }
+    }
+}
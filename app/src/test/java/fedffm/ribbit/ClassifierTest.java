@@ -0,0 +1,69 @@
+package fedffm.ribbit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClassifierTest {
+    // An image drawn as rows of text, '#' for a black pixel
+    private static BinaryImage image(String... rows) {
+        BinaryImage image = new BinaryImage(rows[0].length(), rows.length);
+        for (int y = 0; y < rows.length; ++y)
+            for (int x = 0; x < rows[y].length(); ++x)
+                if (rows[y].charAt(x) == '#')
+                    image.set(x, y);
+        return image;
+    }
+
+    @Test
+    public void ringHasOneHoleInTheCentre() {
+        Classifier.Holes holes = Classifier.findHoles(image(
+                "#######",
+                "#.....#",
+                "#.....#",
+                "#.....#",
+                "#######"));
+
+        assertEquals(1, holes.getCount());
+        assertEquals(15, holes.getBiggestPixels());
+        assertEquals(Classifier.HOLE_CENTRE, holes.getBiggestPosition());
+        assertEquals(1, holes.getBiggestTop());
+    }
+
+    @Test
+    public void biggestHoleDecidesThePosition() {
+        // A small loop on a stem, over a wide box in the bottom third
+        Classifier.Holes holes = Classifier.findHoles(image(
+                "....#####..",
+                "....#...#..",
+                "....#...#..",
+                "....#...#..",
+                "....#####..",
+                ".....#.....",
+                ".....#.....",
+                "###########",
+                "#.........#",
+                "#.........#",
+                "#.........#",
+                "###########"));
+
+        assertEquals(2, holes.getCount());
+        assertEquals(27, holes.getBiggestPixels());
+        assertEquals(Classifier.HOLE_DOWN, holes.getBiggestPosition());
+        assertEquals(8, holes.getBiggestTop());
+    }
+
+    @Test
+    public void specksAndOpenSpaceAreNotHoles() {
+        // The speck is too narrow, and the gap on the right reaches the edge
+        Classifier.Holes holes = Classifier.findHoles(image(
+                "######",
+                "#.#...",
+                "######",
+                "#....#",
+                "####.#"));
+
+        assertEquals(0, holes.getCount());
+        assertEquals(-1, holes.getBiggestPosition());
+    }
+}
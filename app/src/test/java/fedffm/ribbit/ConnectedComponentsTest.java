@@ -0,0 +1,174 @@
+package fedffm.ribbit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectedComponentsTest {
+    // An image drawn as rows of text, '#' for a black pixel
+    private static BinaryImage image(String... rows) {
+        BinaryImage image = new BinaryImage(rows[0].length(), rows.length);
+        for (int y = 0; y < rows.length; ++y)
+            for (int x = 0; x < rows[y].length(); ++x)
+                if (rows[y].charAt(x) == '#')
+                    image.set(x, y);
+        return image;
+    }
+
+    @Test
+    public void armsThatMeetBelowAreOneComponent() {
+        // Both arms get a provisional label of their own on the first row,
+        // and are only found to be the same component on the last one
+        ConnectedComponents components = new ConnectedComponents(image(
+                "#...#",
+                "#...#",
+                "#...#",
+                "#####"));
+
+        assertEquals(1, components.getCount());
+        assertEquals(0, components.getMinX(0));
+        assertEquals(0, components.getMinY(0));
+        assertEquals(4, components.getMaxX(0));
+        assertEquals(3, components.getMaxY(0));
+        assertEquals(11, components.getPixels(0));
+    }
+
+    @Test
+    public void mergesChainAcrossManyLabels() {
+        // Every tooth of the comb starts as its own label; the bar at the
+        // bottom merges them one after another into the first
+        ConnectedComponents components = new ConnectedComponents(image(
+                "#.#.#.#.#",
+                "#.#.#.#.#",
+                "#########"));
+
+        assertEquals(1, components.getCount());
+        for (int x = 0; x < 9; x += 2)
+            assertEquals(0, components.componentAt(x, 0));
+    }
+
+    @Test
+    public void mergesThroughTheNorthEast() {
+        // The right arm only reaches the left one through a diagonal step up
+        // and to the right, after both have their own labels
+        ConnectedComponents components = new ConnectedComponents(image(
+                "#....#",
+                "#...#.",
+                "####.."));
+
+        assertEquals(1, components.getCount());
+        assertEquals(8, components.getPixels(0));
+    }
+
+    @Test
+    public void diagonalsConnectBlackButNotWhite() {
+        BinaryImage image = image(
+                "#..",
+                ".#.",
+                "..#");
+
+        assertEquals(1, new ConnectedComponents(image).getCount());
+
+        // The diagonal stroke splits the white pixels in two
+        ConnectedComponents background = new ConnectedComponents(image, true);
+        assertEquals(2, background.getCount());
+        assertEquals(3, background.getPixels(0));
+        assertEquals(3, background.getPixels(1));
+        assertEquals(-1, background.componentAt(0, 0));
+        assertEquals(background.componentAt(1, 0), background.componentAt(2, 1));
+        assertFalse(background.componentAt(1, 0) == background.componentAt(0, 1));
+    }
+
+    @Test
+    public void componentsAreNumberedInRasterOrder() {
+        ConnectedComponents components = new ConnectedComponents(image(
+                "....##",
+                "##..##",
+                "##....",
+                "...#.."));
+
+        assertEquals(3, components.getCount());
+        assertEquals(0, components.componentAt(4, 0));
+        assertEquals(1, components.componentAt(0, 1));
+        assertEquals(2, components.componentAt(3, 3));
+        assertEquals(-1, components.componentAt(2, 2));
+
+        assertEquals(4.5f, components.getCentroidX(0), 1e-6f);
+        assertEquals(0.5f, components.getCentroidY(0), 1e-6f);
+        assertEquals(1.5f, components.getCentroidY(1), 1e-6f);
+    }
+
+    @Test
+    public void holeDoesNotTouchTheEdge() {
+        ConnectedComponents background = new ConnectedComponents(image(
+                ".....",
+                ".###.",
+                ".#.#.",
+                ".###.",
+                "....."), true);
+
+        assertEquals(2, background.getCount());
+        assertTrue(background.touchesEdge(0));
+        assertFalse(background.touchesEdge(1));
+        assertEquals(1, background.getPixels(1));
+        assertEquals(1, background.componentAt(2, 2));
+    }
+
+    @Test
+    public void componentsSpanWordBoundaries() {
+        // A line crossing two word boundaries, and a second line that only
+        // joins it at the far end
+        BinaryImage image = new BinaryImage(150, 3);
+        for (int x = 0; x < 150; ++x)
+            image.set(x, 0);
+        for (int x = 100; x < 150; ++x)
+            image.set(x, 2);
+        image.set(149, 1);
+
+        ConnectedComponents components = new ConnectedComponents(image);
+        assertEquals(1, components.getCount());
+        assertEquals(201, components.getPixels(0));
+
+        // The white pixels past the width of the last word must not be labelled
+        ConnectedComponents background = new ConnectedComponents(image, true);
+        assertEquals(1, background.getCount());
+        assertEquals(150 * 3 - 201, background.getPixels(0));
+    }
+
+    @Test
+    public void checkerboardBackground() {
+        // The worst case for provisional labels: every white pixel is alone
+        BinaryImage image = new BinaryImage(7, 7);
+        for (int y = 0; y < 7; ++y)
+            for (int x = 0; x < 7; ++x)
+                if ((x + y) % 2 == 1)
+                    image.set(x, y);
+
+        assertEquals(1, new ConnectedComponents(image).getCount());
+        assertEquals(25, new ConnectedComponents(image, true).getCount());
+    }
+
+    @Test
+    public void extractCopiesOnlyTheChosenComponents() {
+        ConnectedComponents components = new ConnectedComponents(image(
+                "#.....",
+                "#..#..",
+                "#.....",
+                "######"));
+
+        // The dot is inside the bounding box of the first component, but
+        // isn't part of it
+        assertEquals(2, components.getCount());
+        BinaryImage letter = components.extract(components.componentAt(0, 0));
+        assertEquals(6, letter.getWidth());
+        assertEquals(4, letter.getHeight());
+        assertEquals(9, letter.count());
+        assertFalse(letter.get(3, 1));
+
+        BinaryImage both = components.extract(0, 1);
+        assertEquals(10, both.count());
+        assertTrue(both.get(3, 1));
+    }
+}
@@ -0,0 +1,245 @@
+package fedffm.ribbit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SampleJournalTest {
+    // Magic, version and generation
+    private static final int HEADER_BYTES = 12;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("journal", ".journal");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    private static List<Character> samples(int count) {
+        List<Character> samples = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+            samples.add(SamplePackTest.sample((char)('a' + i), 10 + 30 * i, 12 + i, i));
+        return samples;
+    }
+
+    // How many bytes a sample takes up in the journal (length, CRC and the sample)
+    private static long recordBytes(Character character) {
+        BinaryImage image = character.getImage();
+        return 8 + 8 + 8L * image.getHeight() * image.getWordsPerRow();
+    }
+
+    private SampleJournal write(int packGeneration, List<Character> samples) throws IOException {
+        SampleJournal journal = SampleJournal.open(file, packGeneration);
+        for (Character character : samples)
+            journal.append(character);
+        journal.close();
+        return journal;
+    }
+
+    private void assertReplayed(List<Character> expected, SampleJournal journal) {
+        assertEquals(expected.size(), journal.size());
+        assertEquals(expected.size(), journal.getReplayed().size());
+        for (int i = 0; i < expected.size(); ++i)
+            SamplePackTest.assertSameSample(expected.get(i), journal.getReplayed().get(i));
+    }
+
+    private void truncate(long length) throws IOException {
+        RandomAccessFile journal = new RandomAccessFile(file, "rw");
+        try {
+            journal.setLength(length);
+        } finally {
+            journal.close();
+        }
+    }
+
+    private void flip(long position) throws IOException {
+        RandomAccessFile journal = new RandomAccessFile(file, "rw");
+        try {
+            journal.seek(position);
+            int b = journal.read();
+            journal.seek(position);
+            journal.write(b ^ 0x40);
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void newJournal() throws IOException {
+        SampleJournal journal = SampleJournal.open(file, 3);
+        journal.close();
+
+        assertEquals(4, journal.getGeneration());
+        assertEquals(0, journal.size());
+        assertEquals(HEADER_BYTES, file.length());
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        List<Character> samples = samples(3);
+        write(0, samples);
+
+        SampleJournal journal = SampleJournal.open(file, 0);
+        assertEquals(1, journal.getGeneration());
+        assertReplayed(samples, journal);
+
+        // Appending carries on after the records that were replayed
+        Character more = SamplePackTest.sample('x', 70, 9, 8);
+        journal.append(more);
+        journal.close();
+        samples.add(more);
+
+        journal = SampleJournal.open(file, 0);
+        journal.close();
+        assertReplayed(samples, journal);
+    }
+
+    @Test
+    public void tornTailIsCutOff() throws IOException {
+        List<Character> samples = samples(3);
+        write(0, samples);
+
+        // Lose the last few bytes of the last record, as if the app had
+        // stopped part way through writing it
+        long end = HEADER_BYTES + recordBytes(samples.get(0)) + recordBytes(samples.get(1));
+        assertEquals(end + recordBytes(samples.get(2)), file.length());
+        truncate(file.length() - 5);
+
+        SampleJournal journal = SampleJournal.open(file, 0);
+        assertReplayed(samples.subList(0, 2), journal);
+        assertEquals(end, file.length());
+
+        // The next record goes straight after the last whole one
+        journal.append(samples.get(2));
+        journal.close();
+        journal = SampleJournal.open(file, 0);
+        journal.close();
+        assertReplayed(samples, journal);
+    }
+
+    @Test
+    public void tornLengthIsCutOff() throws IOException {
+        List<Character> samples = samples(2);
+        write(0, samples);
+
+        // Only part of the next record's length made it
+        long end = file.length();
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            raw.seek(end);
+            raw.write(new byte[] {0, 0, 1});
+        } finally {
+            raw.close();
+        }
+
+        SampleJournal journal = SampleJournal.open(file, 0);
+        journal.close();
+        assertReplayed(samples, journal);
+        assertEquals(end, file.length());
+    }
+
+    @Test
+    public void corruptRecordEndsTheJournal() throws IOException {
+        List<Character> samples = samples(3);
+        write(0, samples);
+
+        // A flipped bit in the pixels of the second record: it fails its
+        // CRC, and nothing after it is trusted either
+        long second = HEADER_BYTES + recordBytes(samples.get(0));
+        flip(second + 8 + 8 + 3);
+
+        SampleJournal journal = SampleJournal.open(file, 0);
+        journal.close();
+        assertReplayed(samples.subList(0, 1), journal);
+        assertEquals(second, file.length());
+    }
+
+    @Test
+    public void corruptLengthEndsTheJournal() throws IOException {
+        List<Character> samples = samples(2);
+        write(0, samples);
+
+        // A length that runs past the end of the file
+        long second = HEADER_BYTES + recordBytes(samples.get(0));
+        flip(second);
+
+        SampleJournal journal = SampleJournal.open(file, 0);
+        journal.close();
+        assertReplayed(samples.subList(0, 1), journal);
+        assertEquals(second, file.length());
+    }
+
+    @Test
+    public void journalFoldedIntoThePackIsDiscarded() throws IOException {
+        write(0, samples(2));
+
+        // The pack has caught up with generation 1, so its samples are in there already
+        SampleJournal journal = SampleJournal.open(file, 1);
+        journal.close();
+        assertEquals(2, journal.getGeneration());
+        assertEquals(0, journal.size());
+        assertEquals(HEADER_BYTES, file.length());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void damagedHeaderStartsANewJournal() throws IOException {
+        write(0, samples(2));
+        flip(0);
+
+        SampleJournal journal = SampleJournal.open(file, 0);
+        journal.close();
+        assertEquals(1, journal.getGeneration());
+        assertEquals(0, journal.size());
+        assertEquals(HEADER_BYTES, file.length());
+
+        truncate(HEADER_BYTES - 1);
+        journal = SampleJournal.open(file, 0);
+        journal.close();
+        assertEquals(0, journal.size());
+        assertEquals(HEADER_BYTES, file.length());
+    }
+
+    @Test
+    public void reset() throws IOException {
+        List<Character> samples = samples(2);
+        SampleJournal journal = SampleJournal.open(file, 0);
+        for (Character character : samples)
+            journal.append(character);
+
+        // Once the samples are in a pack of generation 1, start on generation 2
+        journal.reset();
+        assertEquals(2, journal.getGeneration());
+        assertEquals(0, journal.size());
+        assertEquals(0, journal.getReplayed().size());
+
+        Character more = SamplePackTest.sample('y', 40, 10, 6);
+        journal.append(more);
+        journal.close();
+
+        journal = SampleJournal.open(file, 1);
+        journal.close();
+        assertEquals(2, journal.getGeneration());
+        List<Character> replayed = new ArrayList<>();
+        replayed.add(more);
+        assertReplayed(replayed, journal);
+        assertEquals(HEADER_BYTES + recordBytes(more), file.length());
+    }
+}
@@ -0,0 +1,78 @@
+package fedffm.ribbit;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Compiles the sample images into the SamplePack that is bundled with the app
+ * (src/main/assets/samples.pack), so that a fresh install never has to decode
+ * and classify them. The samples are built the way CharacterBase builds them
+ * when it has no pack: packed with the same darkness test, classified, and
+ * balanced letter by letter, 'a' to 'z'.
+ *
+ * Run main() from the app directory whenever SamplePack.VERSION goes up;
+ * SamplePackCompilerTest fails until the bundled pack matches again
+ */
+public class SamplePackCompiler {
+    static final File ASSETS = new File("src/main/assets");
+
+    // The journal generation of a bundled pack: it has never absorbed one
+    private static final int GENERATION = 0;
+
+    public static void main(String[] args) throws IOException {
+        File      file = new File(ASSETS, SamplePack.FILE_NAME);
+        File temporary = new File(ASSETS, SamplePack.FILE_NAME + ".tmp");
+
+        SamplePack pack = compile(ASSETS);
+        FileOutputStream outputStream = new FileOutputStream(temporary);
+        try {
+            pack.write(outputStream);
+        } finally {
+            outputStream.close();
+        }
+
+        if (!temporary.renameTo(file))
+            throw new IOException("Couldn't rename " + temporary + " to " + file);
+        System.out.println(pack.getCharacters().size() + " samples written to " + file);
+    }
+
+    /**
+     * Build every letter's samples from its images
+     * @param assets The app's assets directory
+     * @return The samples as a pack, in the order CharacterBase saves them
+     */
+    static SamplePack compile(File assets) throws IOException {
+        List<Character> samples = new ArrayList<>();
+        for (char name = 'a'; name <= 'z'; ++name) {
+            List<Character> letter = new ArrayList<>();
+            for (int i = 1; i <= CharacterBase.NUM_FILES; ++i)
+                letter.add(load(new File(assets, CharacterBase.ASSET_FOLDER + name + "/" + i + ".jpg"), name));
+
+            if (CharacterBase.BALANCE_FEATURES)
+                CharacterBase.balanceFeatureAssignments(letter);
+            samples.addAll(letter);
+        }
+        return new SamplePack(samples, GENERATION);
+    }
+
+    private static Character load(File file, char name) throws IOException {
+        BufferedImage decoded = ImageIO.read(file);
+        if (decoded == null)
+            throw new IOException("Couldn't decode " + file);
+
+        int   width  = decoded.getWidth();
+        int   height = decoded.getHeight();
+        int[] pixels = decoded.getRGB(0, 0, width, height, null, 0, width);
+
+        Character character = new Character(BinaryImage.fromPixels(pixels, width, height));
+        character.setName(name);
+        character.setAscii((int)name);
+        return character;
+    }
+}
@@ -0,0 +1,54 @@
+package fedffm.ribbit;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SamplePackCompilerTest {
+    private static byte[] read(File file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            for (int n; (n = inputStream.read(buffer)) > 0; )
+                bytes.write(buffer, 0, n);
+        } finally {
+            inputStream.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void bundledPackMatchesTheImages() throws IOException {
+        // If this fails, the images or the way they're classified have
+        // changed: run SamplePackCompiler.main() to rebuild the bundled pack
+        SamplePack compiled = SamplePackCompiler.compile(SamplePackCompiler.ASSETS);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        compiled.write(bytes);
+
+        byte[] bundled = read(new File(SamplePackCompiler.ASSETS, SamplePack.FILE_NAME));
+        assertArrayEquals(bytes.toByteArray(), bundled);
+    }
+
+    @Test
+    public void everyImageIsCompiled() throws IOException {
+        SamplePack compiled = SamplePackCompiler.compile(SamplePackCompiler.ASSETS);
+        assertEquals(0, compiled.getGeneration());
+        assertEquals(26 * CharacterBase.NUM_FILES, compiled.getCharacters().size());
+
+        // A letter at a time, and every sample of a letter in the same class
+        for (int i = 0; i < compiled.getCharacters().size(); ++i) {
+            Character sample = compiled.getCharacters().get(i);
+            Character first  = compiled.getCharacters().get(i - i % CharacterBase.NUM_FILES);
+            assertEquals((char)('a' + i / CharacterBase.NUM_FILES), sample.getName());
+            assertEquals(first.getFeatureClass(), sample.getFeatureClass());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package fedffm.ribbit;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SamplePackTest {
+    // The header: magic, version, generation, count and CRC
+    private static final int HEADER_BYTES = 20;
+
+    static Character sample(char name, int width, int height, int seed) {
+        BinaryImage image = new BinaryImage(width, height);
+        for (int y = 0; y < height; ++y)
+            for (int x = 0; x < width; ++x)
+                if ((x * 31 + y * 17 + seed) % 7 < 3)
+                    image.set(x, y);
+
+        Character character = new Character(image, seed % 3, seed % 5);
+        character.setName(name);
+        character.setAscii((int)name);
+        return character;
+    }
+
+    static void assertSameSample(Character expected, Character actual) {
+        assertEquals(expected.getName(),         actual.getName());
+        assertEquals(expected.getAscii(),        actual.getAscii());
+        assertEquals(expected.getRatioClass(),   actual.getRatioClass());
+        assertEquals(expected.getFeatureClass(), actual.getFeatureClass());
+
+        BinaryImage a = expected.getImage();
+        BinaryImage b = actual.getImage();
+        assertEquals(a.getWidth(),  b.getWidth());
+        assertEquals(a.getHeight(), b.getHeight());
+        for (int y = 0; y < a.getHeight(); ++y)
+            for (int x = 0; x < a.getWidth(); ++x)
+                assertEquals(a.get(x, y), b.get(x, y));
+
+        assertTrue(Arrays.equals(expected.getTemplate().getWords(), actual.getTemplate().getWords()));
+    }
+
+    private static List<Character> samples() {
+        List<Character> samples = new ArrayList<>();
+        samples.add(sample('a', 20, 30, 1));
+        samples.add(sample('b', 64, 40, 2));
+        samples.add(sample('m', 130, 25, 3));
+        samples.add(sample('z', 1, 1, 4));
+        return samples;
+    }
+
+    private static byte[] write(SamplePack pack) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pack.write(out);
+        return out.toByteArray();
+    }
+
+    private static void assertUnreadable(byte[] bytes) {
+        try {
+            SamplePack.read(ByteBuffer.wrap(bytes));
+            fail("read a damaged pack");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        List<Character> samples = samples();
+        byte[]          bytes   = write(new SamplePack(samples, 7));
+
+        SamplePack pack = SamplePack.read(ByteBuffer.wrap(bytes));
+        assertEquals(7, pack.getGeneration());
+        assertEquals(samples.size(), pack.getCharacters().size());
+        for (int i = 0; i < samples.size(); ++i)
+            assertSameSample(samples.get(i), pack.getCharacters().get(i));
+
+        // The same pack read from a stream
+        SamplePack streamed = SamplePack.read(new ByteArrayInputStream(bytes));
+        assertEquals(7, streamed.getGeneration());
+        for (int i = 0; i < samples.size(); ++i)
+            assertSameSample(samples.get(i), streamed.getCharacters().get(i));
+    }
+
+    @Test
+    public void roundTripOfAView() throws IOException {
+        // Only the pixels of the view are written, lined up at column 0
+        Character whole = sample('q', 150, 20, 5);
+        Character part  = new Character(whole.getImage().view(37, 3, 70, 12), 1, 2);
+        part.setName('q');
+        part.setAscii((int)'q');
+
+        List<Character> samples = new ArrayList<>();
+        samples.add(part);
+        SamplePack pack = SamplePack.read(ByteBuffer.wrap(write(new SamplePack(samples, 1))));
+        assertSameSample(part, pack.getCharacters().get(0));
+    }
+
+    @Test
+    public void emptyPack() throws IOException {
+        byte[] bytes = write(new SamplePack(new ArrayList<Character>(), 0));
+        assertEquals(HEADER_BYTES, bytes.length);
+        assertEquals(0, SamplePack.read(ByteBuffer.wrap(bytes)).getCharacters().size());
+    }
+
+    @Test
+    public void crcCoversEveryByteOfTheSamples() throws IOException {
+        byte[] bytes = write(new SamplePack(samples(), 1));
+        for (int i = HEADER_BYTES; i < bytes.length; i += 37) {
+            byte[] damaged = bytes.clone();
+            damaged[i] ^= 0x10;
+            assertUnreadable(damaged);
+        }
+    }
+
+    @Test
+    public void crcOfABufferUsesItUp() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5});
+        buffer.position(2);
+        int crc = SamplePack.crc(buffer);
+        assertEquals(0, buffer.remaining());
+        assertEquals(crc, SamplePack.crc(ByteBuffer.wrap(new byte[] {3, 4, 5})));
+    }
+
+    @Test
+    public void truncatedPack() throws IOException {
+        byte[] bytes = write(new SamplePack(samples(), 1));
+        for (int length : new int[] {0, 3, HEADER_BYTES - 1, HEADER_BYTES, bytes.length / 2, bytes.length - 1})
+            assertUnreadable(Arrays.copyOf(bytes, length));
+    }
+
+    @Test
+    public void bytesLeftOver() throws IOException {
+        byte[] bytes = write(new SamplePack(samples(), 1));
+        assertUnreadable(Arrays.copyOf(bytes, bytes.length + 8));
+    }
+
+    @Test
+    public void countThatDoesNotMatchTheSamples() throws IOException {
+        // The count isn't covered by the CRC, but reading past the last
+        // sample (or stopping short of it) is still caught
+        byte[] bytes = write(new SamplePack(samples(), 1));
+
+        byte[] more = bytes.clone();
+        ByteBuffer.wrap(more).putInt(12, 5);
+        assertUnreadable(more);
+
+        byte[] fewer = bytes.clone();
+        ByteBuffer.wrap(fewer).putInt(12, 3);
+        assertUnreadable(fewer);
+    }
+
+    @Test
+    public void wrongMagicOrVersion() throws IOException {
+        byte[] bytes = write(new SamplePack(samples(), 1));
+
+        byte[] magic = bytes.clone();
+        magic[0] ^= 0x01;
+        assertUnreadable(magic);
+
+        byte[] version = bytes.clone();
+        ByteBuffer.wrap(version).putInt(4, SamplePack.VERSION + 1);
+        assertUnreadable(version);
+    }
+}
@@ -0,0 +1,114 @@
+package fedffm.ribbit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TemplateTest {
+    private static final int SIZE = Template.SIZE;
+
+    // A SIZE x SIZE image, so that every pixel of the template is one pixel of the image
+    private static BinaryImage rectangle(int x0, int y0, int x1, int y1) {
+        BinaryImage image = new BinaryImage(SIZE, SIZE);
+        for (int y = y0; y < y1; ++y)
+            for (int x = x0; x < x1; ++x)
+                image.set(x, y);
+        return image;
+    }
+
+    private static int distance(Template template, int x, int y) {
+        return template.getDistances()[y * SIZE + x];
+    }
+
+    @Test
+    public void edgesOfASolidBlock() {
+        Template template = new Template(rectangle(8, 8, 16, 16));
+
+        // The outline of an 8 x 8 block: 8 * 4 - 4 pixels
+        assertEquals(28, template.getEdges().length);
+        for (short edge : template.getEdges()) {
+            int x = edge % SIZE;
+            int y = edge / SIZE;
+            assertTrue(x == 8 || x == 15 || y == 8 || y == 15);
+            assertEquals(0, distance(template, x, y));
+        }
+    }
+
+    @Test
+    public void distancesAreThreeFourChamfer() {
+        // A single pixel is its own (only) edge
+        Template template = new Template(rectangle(10, 10, 11, 11));
+        assertEquals(1, template.getEdges().length);
+
+        assertEquals(0,                 distance(template, 10, 10));
+        assertEquals(Template.STEP,     distance(template, 11, 10));
+        assertEquals(Template.STEP,     distance(template, 10,  9));
+        assertEquals(Template.STEP + 1, distance(template, 11, 11));
+        assertEquals(Template.STEP + 1, distance(template,  9,  9));
+
+        // Two steps across and one diagonally
+        assertEquals(3 * Template.STEP + 1, distance(template, 13, 11));
+        assertEquals(3 * Template.STEP + 1, distance(template,  7,  9));
+    }
+
+    @Test
+    public void distancesAcrossTheWholeTemplate() {
+        // The far corner is 31 diagonal steps away, which still fits in a byte
+        Template template = new Template(rectangle(0, 0, 1, 1));
+        assertEquals(31 * (Template.STEP + 1), distance(template, 31, 31));
+        assertEquals(31 * Template.STEP,       distance(template, 31,  0));
+
+        // With no edges at all, everything is FAR
+        Template empty = new Template(new BinaryImage(SIZE, SIZE));
+        for (byte d : empty.getDistances())
+            assertEquals(Template.FAR, d);
+    }
+
+    @Test
+    public void chamferOfIdenticalTemplatesIsZero() {
+        Template a = new Template(rectangle(4, 6, 20, 26));
+        Template b = new Template(rectangle(4, 6, 20, 26));
+        assertEquals(0f, a.chamfer(b), 0f);
+        assertEquals(0f, a.chamfer(a), 0f);
+    }
+
+    @Test
+    public void chamferOfAShiftedStroke() {
+        // A vertical bar, and the same bar one pixel to the right: every edge
+        // is at most one step from the other's outline
+        Template a = new Template(rectangle(10, 4, 13, 28));
+        Template b = new Template(rectangle(11, 4, 14, 28));
+
+        float distance = a.chamfer(b);
+        assertTrue(distance > 0);
+        assertTrue(distance <= Template.STEP);
+        assertEquals(distance, b.chamfer(a), 0f);
+
+        // A bar further away is further away
+        Template c = new Template(rectangle(20, 4, 23, 28));
+        assertTrue(a.chamfer(c) > distance);
+    }
+
+    @Test
+    public void chamferIsTheMeanOfBothDirections() {
+        Template dot   = new Template(rectangle(10, 10, 11, 11));
+        Template block = new Template(rectangle(10, 10, 13, 13));
+
+        // The dot lies on the block's outline (0). The block's 8 edges (all
+        // but its centre) are, row by row, 0 3 6 / 3 7 / 6 7 8 from the dot
+        int blockToDot = 0 + 3 + 6 + 3 + 7 + 6 + 7 + 8;
+        assertEquals(8, block.getEdges().length);
+        assertEquals((float)blockToDot / 9, dot.chamfer(block), 1e-6f);
+        assertEquals(dot.chamfer(block), block.chamfer(dot), 0f);
+    }
+
+    @Test
+    public void chamferWithNoEdgesIsFar() {
+        Template empty = new Template(new BinaryImage(SIZE, SIZE));
+        Template block = new Template(rectangle(8, 8, 16, 16));
+        assertEquals(0, empty.getEdges().length);
+        assertEquals((float)Template.FAR, empty.chamfer(block), 0f);
+        assertEquals((float)Template.FAR, block.chamfer(empty), 0f);
+    }
+}